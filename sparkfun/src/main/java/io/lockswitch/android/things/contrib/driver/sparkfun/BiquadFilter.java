@@ -0,0 +1,125 @@
+/*
+ * Copyright 2017 Choong Hong Cheng, Lockswitch Sdn Bhd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.lockswitch.android.things.contrib.driver.sparkfun;
+
+/**
+ * Second order IIR section in transposed direct form II, with the low pass, high pass and
+ * band pass designs of the Audio EQ Cookbook. The first sample primes the state as if it
+ * had been the input forever, so there is no start-up transient.
+ */
+public class BiquadFilter implements SampleFilter {
+    public static final float BUTTERWORTH_Q = 0.70710678f;
+
+    private final float b0, b1, b2, a1, a2;
+    private float s1, s2;
+    private boolean primed = false;
+
+    /**
+     * Coefficients normalised so a0 is 1
+     */
+    public BiquadFilter(float b0, float b1, float b2, float a1, float a2) {
+        this.b0 = b0;
+        this.b1 = b1;
+        this.b2 = b2;
+        this.a1 = a1;
+        this.a2 = a2;
+    }
+
+    /**
+     * @param sampleRateHz
+     * @param cutoffHz -3 dB frequency for the Butterworth Q
+     * @param q
+     * @return low pass filter
+     */
+    public static BiquadFilter lowPass(float sampleRateHz, float cutoffHz, float q) {
+        double w = 2.0 * Math.PI * cutoffHz / sampleRateHz;
+        double cos = Math.cos(w);
+        double alpha = Math.sin(w) / (2.0 * q);
+        double a0 = 1.0 + alpha;
+        return new BiquadFilter((float) ((1.0 - cos) / 2.0 / a0), (float) ((1.0 - cos) / a0),
+                (float) ((1.0 - cos) / 2.0 / a0), (float) (-2.0 * cos / a0), (float) ((1.0 - alpha) / a0));
+    }
+
+    /**
+     * @param sampleRateHz
+     * @param cutoffHz -3 dB frequency for the Butterworth Q
+     * @param q
+     * @return high pass filter, e.g. to take gravity out of the accelerometer
+     */
+    public static BiquadFilter highPass(float sampleRateHz, float cutoffHz, float q) {
+        double w = 2.0 * Math.PI * cutoffHz / sampleRateHz;
+        double cos = Math.cos(w);
+        double alpha = Math.sin(w) / (2.0 * q);
+        double a0 = 1.0 + alpha;
+        return new BiquadFilter((float) ((1.0 + cos) / 2.0 / a0), (float) (-(1.0 + cos) / a0),
+                (float) ((1.0 + cos) / 2.0 / a0), (float) (-2.0 * cos / a0), (float) ((1.0 - alpha) / a0));
+    }
+
+    /**
+     * @param sampleRateHz
+     * @param centerHz
+     * @param q center frequency over bandwidth
+     * @return band pass filter with 0 dB peak gain
+     */
+    public static BiquadFilter bandPass(float sampleRateHz, float centerHz, float q) {
+        double w = 2.0 * Math.PI * centerHz / sampleRateHz;
+        double cos = Math.cos(w);
+        double alpha = Math.sin(w) / (2.0 * q);
+        double a0 = 1.0 + alpha;
+        return new BiquadFilter((float) (alpha / a0), 0.0f, (float) (-alpha / a0),
+                (float) (-2.0 * cos / a0), (float) ((1.0 - alpha) / a0));
+    }
+
+    @Override
+    public int filter(float[] data, int offset, int count) {
+        if (count > 0 && !primed) {
+            prime(data[offset]);
+        }
+        float s1 = this.s1;
+        float s2 = this.s2;
+        for (int i = offset; i < offset + count; i++) {
+            float x = data[i];
+            float y = b0 * x + s1;
+            s1 = b1 * x - a1 * y + s2;
+            s2 = b2 * x - a2 * y;
+            data[i] = y;
+        }
+        this.s1 = s1;
+        this.s2 = s2;
+        return count;
+    }
+
+    private void prime(float x) {
+        float denominator = 1.0f + a1 + a2;
+        // DC gain, 0 for a high pass
+        float y = denominator == 0.0f ? 0.0f : x * (b0 + b1 + b2) / denominator;
+        s2 = b2 * x - a2 * y;
+        s1 = b1 * x - a1 * y + s2;
+        primed = true;
+    }
+
+    @Override
+    public void reset() {
+        s1 = 0.0f;
+        s2 = 0.0f;
+        primed = false;
+    }
+
+    @Override
+    public SampleFilter copy() {
+        return new BiquadFilter(b0, b1, b2, a1, a2);
+    }
+}
@@ -18,11 +18,40 @@ package io.lockswitch.android.things.contrib.driver.sparkfun;
 
 import android.graphics.Bitmap;
 
+import java.util.Arrays;
+
 /**
  * Taken from `ssd1306` driver
  */
 public class BitmapHelper {
     private static final int GRADIENT_CUTOFF = 170; // Tune for gradient picker on grayscale images.
+    private static final int LUMINANCE_CUTOFF = 128;
+
+    /**
+     * How source pixels are turned into lit or dark OLED pixels
+     */
+    public enum Mode {
+        WHITE,              // only opaque white pixels are lit
+        BLUE_THRESHOLD,     // blue channel above GRADIENT_CUTOFF
+        LUMINANCE,          // luminance above 50%
+        BAYER,              // ordered dithering with a 4x4 Bayer matrix
+        FLOYD_STEINBERG     // error diffusion
+    }
+
+    // 4x4 Bayer matrix scaled to luminance thresholds
+    private static final int[] BAYER_4X4 = {
+              8, 136,  40, 168,
+            200,  72, 232, 104,
+             56, 184,  24, 152,
+            248, 120, 216,  88
+    };
+
+    // Pixel rows of the page being converted, reused across calls
+    private static int[] sPixels = new int[0];
+
+    // Floyd-Steinberg error of the current and next row, with one guard cell on each side
+    private static int[] sErrorCurrent = new int[0];
+    private static int[] sErrorNext = new int[0];
 
     /**
      * Converts a bitmap image to LCD screen data and sets it on the given screen at the specified
@@ -36,31 +65,36 @@ public class BitmapHelper {
      */
     public static void setBmpData(SSD1306 mScreen, int xOffset, int yOffset, Bitmap bmp,
                                   boolean drawWhite) {
+        setBmpData(mScreen, xOffset, yOffset, bmp, drawWhite ? Mode.WHITE : Mode.BLUE_THRESHOLD);
+    }
+
+    /**
+     * Converts a bitmap image to LCD screen data and sets it on the given screen at the specified
+     * offset.
+     * @param mScreen The OLED screen to write the bitmap data to.
+     * @param xOffset The horizontal offset to draw the image at.
+     * @param yOffset The vertical offset to draw the image at.
+     * @param bmp The bitmap image that you want to convert to screen data.
+     * @param mode How pixels are converted, see {@link Mode}.
+     */
+    public static synchronized void setBmpData(SSD1306 mScreen, int xOffset, int yOffset, Bitmap bmp,
+                                               Mode mode) {
         int width = bmp.getWidth();
         int height = bmp.getHeight();
-        int bmpByteSize = (int) Math.ceil((double) (width * ((height / 8) > 1 ? (height / 8) : 1)));
+        resetDiffusion(width);
 
         // Each byte stored in memory represents 8 vertical pixels.  As such, you must fill the
         // memory with pixel data moving vertically top-down through the image and scrolling
         // across, while appending the vertical pixel data by series of 8.
-
+        // Only lit pixels are drawn, so each packed byte is also its own write mask.
         for (int y = 0; y < height; y += 8) {
+            int rows = readRows(bmp, y, width, height);
+            binarizeRows(y, width, rows, mode);
+
             for (int x = 0; x < width; x++) {
-                int bytePos = x + ((y / 8) * width);
-
-                for (int k = 0; k < 8; k++) {
-                    if ((k + y < height) && (bytePos < bmpByteSize)) {
-                        int pixel = bmp.getPixel(x, y + k);
-                        if (!drawWhite) { // Look at Alpha channel instead
-                            if ((pixel & 0xFF) > GRADIENT_CUTOFF) {
-                                mScreen.setPixel(x + xOffset, y + yOffset + k, SSD1306.ColorCode.WHITE);
-                            }
-                        } else {
-                            if (pixel == -1) { // Only draw white pixels
-                                mScreen.setPixel(x + xOffset, y + yOffset + k, SSD1306.ColorCode.WHITE);
-                            }
-                        }
-                    }
+                int bits = packColumn(x, width, rows);
+                if (bits != 0) {
+                    mScreen.blitColumn(x + xOffset, y + yOffset, bits, bits);
                 }
             }
         }
@@ -72,34 +106,170 @@ public class BitmapHelper {
      * @param offset The byte offset to start writing screen bitmap data at.
      * @param bmp The bitmap image that you want to convert to screen data.
      * @param drawWhite Set to true to draw white pixels, false to draw pixels based on gradient.
-     * @return A byte array with pixel data for the SSD1306.
      */
     public static void bmpToBytes(byte[] buffer, int offset, Bitmap bmp, boolean drawWhite) {
+        bmpToBytes(buffer, offset, bmp, drawWhite ? Mode.WHITE : Mode.BLUE_THRESHOLD);
+    }
+
+    /**
+     * Converts a bitmap image to LCD screen data and returns the screen data as bytes.
+     * @param buffer The screen's data buffer.
+     * @param offset The byte offset to start writing screen bitmap data at.
+     * @param bmp The bitmap image that you want to convert to screen data.
+     * @param mode How pixels are converted, see {@link Mode}.
+     */
+    public static synchronized void bmpToBytes(byte[] buffer, int offset, Bitmap bmp, Mode mode) {
         int width = bmp.getWidth();
         int height = bmp.getHeight();
+        resetDiffusion(width);
 
-        // Each byte stored in memory represents 8 vertical pixels.  As such, you must fill the
-        // memory with pixel data moving vertically top-down through the image and scrolling
-        // across, while appending the vertical pixel data by series of 8.
         for (int y = 0; y < height; y += 8) {
-            for (int x = 0; x < width; x++) {
-                int bytePos = (offset + x) + ((y / 8) * width);
-
-                for (int k = 0; k < 8; k++) {
-                    if ((k + y < height) && (bytePos < buffer.length)) {
-                        int pixel = bmp.getPixel(x, y + k);
-                        if (!drawWhite) { // Look at Alpha channel instead
-                            if ((pixel & 0xFF) > GRADIENT_CUTOFF) {
-                                buffer[bytePos] |= 1 << k;
-                            }
-                        } else {
-                            if (pixel == -1) { // Only draw white pixels
-                                buffer[bytePos] |= 1 << k;
-                            }
-                        }
+            int rows = readRows(bmp, y, width, height);
+            binarizeRows(y, width, rows, mode);
+            if (!packRows(buffer, offset + ((y / 8) * width), width, rows)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Converts ARGB pixels, as returned by {@link Bitmap#getPixels}, to LCD screen data.
+     * Works on plain arrays so it can also run off-device.
+     * @param pixels ARGB pixels, row after row, left untouched.
+     * @param width Image width.
+     * @param height Image height.
+     * @param mode How pixels are converted, see {@link Mode}.
+     * @param buffer The screen's data buffer.
+     * @param offset The byte offset to start writing screen bitmap data at.
+     */
+    public static synchronized void convert(int[] pixels, int width, int height, Mode mode,
+                                            byte[] buffer, int offset) {
+        resetDiffusion(width);
+        ensurePixels(width);
+
+        for (int y = 0; y < height; y += 8) {
+            int rows = Math.min(8, height - y);
+            System.arraycopy(pixels, y * width, sPixels, 0, rows * width);
+            binarizeRows(y, width, rows, mode);
+            if (!packRows(buffer, offset + ((y / 8) * width), width, rows)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Pull up to 8 rows of the bitmap into sPixels with a single getPixels() call
+     * @return number of rows read
+     */
+    private static int readRows(Bitmap bmp, int y, int width, int height) {
+        int rows = Math.min(8, height - y);
+        ensurePixels(width);
+        bmp.getPixels(sPixels, 0, width, 0, y, width, rows);
+        return rows;
+    }
+
+    private static void ensurePixels(int width) {
+        if (sPixels.length < width * 8) {
+            sPixels = new int[width * 8];
+        }
+    }
+
+    private static void resetDiffusion(int width) {
+        if (sErrorCurrent.length < width + 2) {
+            sErrorCurrent = new int[width + 2];
+            sErrorNext = new int[width + 2];
+        } else {
+            Arrays.fill(sErrorCurrent, 0);
+            Arrays.fill(sErrorNext, 0);
+        }
+    }
+
+    /**
+     * Replace the ARGB rows in sPixels with 1 for a lit pixel and 0 for a dark one
+     * @param y Image row of the first row in sPixels, for the position dependent modes.
+     */
+    private static void binarizeRows(int y, int width, int rows, Mode mode) {
+        int[] pixels = sPixels;
+        int count = rows * width;
+
+        switch (mode) {
+            case WHITE:
+                for (int i = 0; i < count; i++) {
+                    pixels[i] = pixels[i] == -1 ? 1 : 0;
+                }
+                break;
+            case BLUE_THRESHOLD:
+                for (int i = 0; i < count; i++) {
+                    pixels[i] = (pixels[i] & 0xFF) > GRADIENT_CUTOFF ? 1 : 0;
+                }
+                break;
+            case LUMINANCE:
+                for (int i = 0; i < count; i++) {
+                    pixels[i] = luminance(pixels[i]) >= LUMINANCE_CUTOFF ? 1 : 0;
+                }
+                break;
+            case BAYER:
+                for (int k = 0, i = 0; k < rows; k++) {
+                    int row = ((y + k) & 3) << 2;
+                    for (int x = 0; x < width; x++, i++) {
+                        pixels[i] = luminance(pixels[i]) >= BAYER_4X4[row | (x & 3)] ? 1 : 0;
+                    }
+                }
+                break;
+            case FLOYD_STEINBERG:
+                for (int k = 0, i = 0; k < rows; k++) {
+                    int[] current = sErrorCurrent;
+                    int[] next = sErrorNext;
+                    for (int x = 0; x < width; x++, i++) {
+                        int value = luminance(pixels[i]) + current[x + 1];
+                        int lit = value >= LUMINANCE_CUTOFF ? 1 : 0;
+                        int error = value - (lit * 255);
+                        pixels[i] = lit;
+
+                        current[x + 2] += (error * 7) >> 4;
+                        next[x] += (error * 3) >> 4;
+                        next[x + 1] += (error * 5) >> 4;
+                        next[x + 2] += error >> 4;
                     }
+                    // The next row becomes current, the old current is cleared for reuse
+                    Arrays.fill(current, 0);
+                    sErrorCurrent = next;
+                    sErrorNext = current;
                 }
+                break;
+        }
+    }
+
+    /**
+     * Integer Rec. 601 luminance of an ARGB pixel, 0 to 255
+     */
+    private static int luminance(int pixel) {
+        return (77 * ((pixel >> 16) & 0xFF) + 150 * ((pixel >> 8) & 0xFF) + 29 * (pixel & 0xFF)) >> 8;
+    }
+
+    /**
+     * OR the binarized rows in sPixels into the buffer, one byte per column
+     * @return false once the buffer is full
+     */
+    private static boolean packRows(byte[] buffer, int rowPos, int width, int rows) {
+        for (int x = 0; x < width; x++) {
+            int bytePos = rowPos + x;
+            if (bytePos >= buffer.length) {
+                return false;
             }
+            buffer[bytePos] |= packColumn(x, width, rows);
+        }
+        return true;
+    }
+
+    /**
+     * Pack one column of the binarized rows in sPixels into a byte, top row in the LSB
+     */
+    private static int packColumn(int x, int width, int rows) {
+        int bits = 0;
+        for (int k = 0, i = x; k < rows; k++, i += width) {
+            bits |= sPixels[i] << k;
         }
+        return bits;
     }
 }
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2017 Choong Hong Cheng, Lockswitch Sdn Bhd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.lockswitch.android.things.contrib.driver.sparkfun;
+
+/**
+ * Transaction counters of a bus, updated by the bus implementations on every call
+ */
+public class BusStatistics {
+    private long mTransactions = 0;
+    private long mBytesRead = 0;
+    private long mBytesWritten = 0;
+    private long mNanos = 0;
+
+    /**
+     * Account for one transaction
+     * @param bytesRead
+     * @param bytesWritten
+     * @param nanos time spent in the transaction
+     */
+    public synchronized void record(int bytesRead, int bytesWritten, long nanos) {
+        mTransactions++;
+        mBytesRead += bytesRead;
+        mBytesWritten += bytesWritten;
+        mNanos += nanos;
+    }
+
+    /**
+     * Add the counters of another bus, e.g. to total several devices
+     * @param other
+     */
+    public void add(BusStatistics other) {
+        // Never hold both locks, so a.add(b) and b.add(a) cannot deadlock
+        long transactions;
+        long bytesRead;
+        long bytesWritten;
+        long nanos;
+        synchronized (other) {
+            transactions = other.mTransactions;
+            bytesRead = other.mBytesRead;
+            bytesWritten = other.mBytesWritten;
+            nanos = other.mNanos;
+        }
+        synchronized (this) {
+            mTransactions += transactions;
+            mBytesRead += bytesRead;
+            mBytesWritten += bytesWritten;
+            mNanos += nanos;
+        }
+    }
+
+    public synchronized long getTransactions() {
+        return mTransactions;
+    }
+
+    public synchronized long getBytesRead() {
+        return mBytesRead;
+    }
+
+    public synchronized long getBytesWritten() {
+        return mBytesWritten;
+    }
+
+    /**
+     * Total time spent in transactions
+     * @return long in nanoseconds
+     */
+    public synchronized long getNanos() {
+        return mNanos;
+    }
+
+    public synchronized void reset() {
+        mTransactions = 0;
+        mBytesRead = 0;
+        mBytesWritten = 0;
+        mNanos = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return mTransactions + " transactions, " + mBytesRead + " bytes read, "
+                + mBytesWritten + " bytes written, " + (mNanos / 1000) + " us";
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2017 Choong Hong Cheng, Lockswitch Sdn Bhd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.lockswitch.android.things.contrib.driver.sparkfun;
+
+/**
+ * Keeps every factor-th sample, compacting the block towards its offset. The phase
+ * carries over between blocks, so the output rate is exact whatever the block sizes.
+ * Put a low pass below the new Nyquist frequency in front of it.
+ */
+public class Decimator implements SampleFilter {
+    private final int factor;
+    // Samples to drop before the next one kept, for values and timestamps separately
+    private int skip = 0;
+    private int timestampSkip = 0;
+
+    /**
+     * @param factor
+     */
+    public Decimator(int factor) {
+        if (factor <= 0) {
+            throw new IllegalArgumentException("Decimation factor must be positive: " + factor);
+        }
+        this.factor = factor;
+    }
+
+    public int getFactor() {
+        return factor;
+    }
+
+    @Override
+    public int filter(float[] data, int offset, int count) {
+        int out = offset;
+        for (int i = offset; i < offset + count; i++) {
+            if (skip == 0) {
+                data[out++] = data[i];
+                skip = factor - 1;
+            } else {
+                skip--;
+            }
+        }
+        return out - offset;
+    }
+
+    /**
+     * The same for timestamps, with its own phase so one instance can decimate a block
+     * and its timestamps
+     * @param data
+     * @param offset
+     * @param count
+     * @return samples left at offset
+     */
+    public int filter(long[] data, int offset, int count) {
+        int out = offset;
+        for (int i = offset; i < offset + count; i++) {
+            if (timestampSkip == 0) {
+                data[out++] = data[i];
+                timestampSkip = factor - 1;
+            } else {
+                timestampSkip--;
+            }
+        }
+        return out - offset;
+    }
+
+    @Override
+    public void reset() {
+        skip = 0;
+        timestampSkip = 0;
+    }
+
+    @Override
+    public SampleFilter copy() {
+        return new Decimator(factor);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2017 Choong Hong Cheng, Lockswitch Sdn Bhd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.lockswitch.android.things.contrib.driver.sparkfun;
+
+/**
+ * First order low pass, y += alpha * (x - y), starting at the first sample
+ */
+public class ExponentialMovingAverage implements SampleFilter {
+    private final float alpha;
+    private float y;
+    private boolean primed = false;
+
+    /**
+     * @param alpha weight of the newest sample, 0 to 1
+     */
+    public ExponentialMovingAverage(float alpha) {
+        if (alpha <= 0.0f || alpha > 1.0f) {
+            throw new IllegalArgumentException("Alpha must be in (0, 1]: " + alpha);
+        }
+        this.alpha = alpha;
+    }
+
+    /**
+     * @param sampleRateHz
+     * @param cutoffHz
+     * @return the average matching an RC low pass with the given -3 dB frequency
+     */
+    public static ExponentialMovingAverage fromCutoff(float sampleRateHz, float cutoffHz) {
+        float dt = 1.0f / sampleRateHz;
+        float rc = (float) (1.0 / (2.0 * Math.PI * cutoffHz));
+        return new ExponentialMovingAverage(dt / (rc + dt));
+    }
+
+    @Override
+    public int filter(float[] data, int offset, int count) {
+        if (count > 0 && !primed) {
+            y = data[offset];
+            primed = true;
+        }
+        float y = this.y;
+        for (int i = offset; i < offset + count; i++) {
+            y += alpha * (data[i] - y);
+            data[i] = y;
+        }
+        this.y = y;
+        return count;
+    }
+
+    @Override
+    public void reset() {
+        primed = false;
+    }
+
+    @Override
+    public SampleFilter copy() {
+        return new ExponentialMovingAverage(alpha);
+    }
+}
@@ -0,0 +1,592 @@
+/*
+ * Copyright 2017 Choong Hong Cheng, Lockswitch Sdn Bhd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.lockswitch.android.things.contrib.driver.sparkfun;
+
+/**
+ * In-memory LSM9DS0 register file behind two fake I2C buses. Every read starting at an
+ * output register produces a new synthetic sample, a device slowly tilting and turning
+ * in the earth field, scaled to the full-scale range currently programmed. Once a FIFO is
+ * enabled, {@link #fillFifo(int)} queues samples for the driver to drain. A sensor only
+ * flags data while converting, from one output data period after its power mode write
+ * woke it up, so reading a status register also produces a sample then. Without
+ * {@link #setStepOnRead(boolean)}, samples only come from {@link #step()}, which also
+ * raises the data-ready pins:
+ * <pre>
+ * FakeLSM9DS0 imu = new FakeLSM9DS0();
+ * LSM9DS0 lsm9DS0 = new LSM9DS0(imu.getGyroBus(), imu.getXmBus());
+ * </pre>
+ */
+public class FakeLSM9DS0 {
+    private static final int REGISTERS = 0x80;
+    private static final int AUTO_INCREMENT = 0x80;
+    private static final int DATA_READY = 0x08;
+    private static final int FIFO_EN = 0x40;
+    private static final int FIFO_OVERRUN = 0x40;
+    private static final int FIFO_EMPTY = 0x20;
+    private static final int FIFO_WATERMARK = 0x80;
+    private static final int FIFO_STREAM = 0x2;
+    private static final int MOTION_ACTIVE = 0x40;
+
+    private static final byte WHO_AM_I_G_VALUE = (byte) 0xD4;
+    private static final byte WHO_AM_I_XM_VALUE = (byte) 0x49;
+
+    // Bus clock used to model the transaction time
+    private static final int I2C_FREQUENCY = 400000;
+
+    private final byte[] mGyroRegisters = new byte[REGISTERS];
+    private final byte[] mXmRegisters = new byte[REGISTERS];
+
+    private final Bus mGyroBus = new Bus(mGyroRegisters, LSM9DS0Constants.CTRL_REG5_G,
+            LSM9DS0Constants.FIFO_CTRL_REG_G, LSM9DS0Constants.FIFO_SRC_REG_G, LSM9DS0Constants.OUT_X_L_G);
+    private final Bus mXmBus = new Bus(mXmRegisters, LSM9DS0Constants.CTRL_REG0_XM,
+            LSM9DS0Constants.FIFO_CTRL_REG, LSM9DS0Constants.FIFO_SRC_REG, LSM9DS0Constants.OUT_X_L_A);
+
+    // Sample generator state
+    private long mSample = 0;
+    private float mSampleInterval = 0.01f;
+    private boolean mStepOnRead = true;
+    private long mLastStepNanos = 0;
+
+    // System.nanoTime() when the gyro, accel and mag started converting, 0 while off
+    private long mGyroOnNanos = 0;
+    private long mAccelOnNanos = 0;
+    private long mMagOnNanos = 0;
+
+    // DRDY_G, INT1_XM and INT2_XM
+    private static final int GYRO_LINE = 1;
+    private static final int ACCEL_LINE = 2;
+    private static final int MAG_LINE = 4;
+    private final Pin mGyroDataReadyPin = new Pin(GYRO_LINE);
+    private final Pin mAccelDataReadyPin = new Pin(ACCEL_LINE);
+    private final Pin mMagDataReadyPin = new Pin(MAG_LINE);
+
+    public FakeLSM9DS0() {
+        mGyroRegisters[LSM9DS0Constants.WHO_AM_I_G] = WHO_AM_I_G_VALUE;
+        mGyroRegisters[LSM9DS0Constants.CTRL_REG1_G] = 0x07;
+        mXmRegisters[LSM9DS0Constants.WHO_AM_I_XM] = WHO_AM_I_XM_VALUE;
+        mXmRegisters[LSM9DS0Constants.CTRL_REG1_XM] = 0x07;
+        mXmRegisters[LSM9DS0Constants.CTRL_REG7_XM] = 0x02;
+        generate();
+    }
+
+    public I2cBus getGyroBus() {
+        return mGyroBus;
+    }
+
+    public I2cBus getXmBus() {
+        return mXmBus;
+    }
+
+    public BusStatistics getGyroStatistics() {
+        return mGyroBus.mStatistics;
+    }
+
+    public BusStatistics getXmStatistics() {
+        return mXmBus.mStatistics;
+    }
+
+    /**
+     * @return DRDY_G, high while gyroscope data is ready and routed to it
+     */
+    public InputPin getGyroDataReadyPin() {
+        return mGyroDataReadyPin;
+    }
+
+    /**
+     * @return INT1_XM, high while accelerometer data is ready or a motion event is
+     * pending, and routed to it
+     */
+    public InputPin getAccelDataReadyPin() {
+        return mAccelDataReadyPin;
+    }
+
+    /**
+     * @return INT2_XM, high while magnetometer data is ready or a motion event is
+     * pending, and routed to it
+     */
+    public InputPin getMagDataReadyPin() {
+        return mMagDataReadyPin;
+    }
+
+    /**
+     * @param stepOnRead true (the default) to generate a sample on every read of the
+     *                   output registers, false to only generate them with {@link #step()}
+     */
+    public synchronized void setStepOnRead(boolean stepOnRead) {
+        mStepOnRead = stepOnRead;
+    }
+
+    /**
+     * @return System.nanoTime() of the last {@link #step()}
+     */
+    public synchronized long getLastStepNanos() {
+        return mLastStepNanos;
+    }
+
+    /**
+     * Time between two generated samples
+     * @param seconds
+     */
+    public synchronized void setSampleInterval(float seconds) {
+        mSampleInterval = seconds;
+    }
+
+    /**
+     * Current value of a register
+     * @param gyro true for the gyro device, false for the accel/mag device
+     * @param reg
+     * @return byte
+     */
+    public synchronized byte getRegister(boolean gyro, int reg) {
+        return gyro ? mGyroRegisters[reg] : mXmRegisters[reg];
+    }
+
+    /**
+     * Generate samples into every enabled FIFO, as if the given number of output data
+     * periods had passed
+     * @param samples
+     */
+    public synchronized void fillFifo(int samples) {
+        for (int i = 0; i < samples; i++) {
+            generate();
+            mGyroBus.push();
+            mXmBus.push();
+        }
+    }
+
+    /**
+     * Generate the next sample into the output registers and flag it as ready, firing
+     * the data-ready pins that go high. Listeners are called on this thread, outside
+     * of the register lock.
+     */
+    public void step() {
+        int edges;
+        synchronized (this) {
+            int before = interruptLines();
+            generate();
+            mLastStepNanos = System.nanoTime();
+            edges = interruptLines() & ~before;
+        }
+        if ((edges & GYRO_LINE) != 0) {
+            mGyroDataReadyPin.fire();
+        }
+        if ((edges & ACCEL_LINE) != 0) {
+            mAccelDataReadyPin.fire();
+        }
+        if ((edges & MAG_LINE) != 0) {
+            mMagDataReadyPin.fire();
+        }
+    }
+
+    /**
+     * Flag motion events as if the chip had detected them, firing the interrupt lines
+     * they are routed to that go high. Reading a source register clears it, like a
+     * latched request.
+     * @param freeFallSource INT_GEN_1_SRC, e.g. 0x55 for all axes low
+     * @param wakeUpSource INT_GEN_2_SRC, e.g. 0x42 for x high
+     * @param clickSource CLICK_SRC, e.g. 0x54 for a single click on z
+     */
+    public void injectMotion(int freeFallSource, int wakeUpSource, int clickSource) {
+        int edges;
+        synchronized (this) {
+            int before = interruptLines();
+            mXmRegisters[LSM9DS0Constants.INT_GEN_1_SRC] |= (byte) freeFallSource;
+            mXmRegisters[LSM9DS0Constants.INT_GEN_2_SRC] |= (byte) wakeUpSource;
+            mXmRegisters[LSM9DS0Constants.CLICK_SRC] |= (byte) clickSource;
+            edges = interruptLines() & ~before;
+        }
+        if ((edges & ACCEL_LINE) != 0) {
+            mAccelDataReadyPin.fire();
+        }
+        if ((edges & MAG_LINE) != 0) {
+            mMagDataReadyPin.fire();
+        }
+    }
+
+    /**
+     * Levels of the interrupt lines, following the status and motion source registers
+     * and the routing in CTRL_REG3_G (I2_DRDY), CTRL_REG3_XM (P1_TAP P1_INT1 P1_INT2
+     * P1_DRDYA) and CTRL_REG4_XM (P2_TAP P2_INT1 P2_INT2 P2_DRDYM)
+     */
+    private int interruptLines() {
+        int lines = 0;
+        if ((mGyroRegisters[LSM9DS0Constants.STATUS_REG_G] & DATA_READY) != 0
+                && (mGyroRegisters[LSM9DS0Constants.CTRL_REG3_G] & 0x08) != 0) {
+            lines |= GYRO_LINE;
+        }
+        if ((mXmRegisters[LSM9DS0Constants.STATUS_REG_A] & DATA_READY) != 0
+                && (mXmRegisters[LSM9DS0Constants.CTRL_REG3_XM] & 0x04) != 0) {
+            lines |= ACCEL_LINE;
+        }
+        if ((mXmRegisters[LSM9DS0Constants.STATUS_REG_M] & DATA_READY) != 0
+                && (mXmRegisters[LSM9DS0Constants.CTRL_REG4_XM] & 0x04) != 0) {
+            lines |= MAG_LINE;
+        }
+        int motion = motionRequests();
+        if ((mXmRegisters[LSM9DS0Constants.CTRL_REG3_XM] & (motion << 4)) != 0) {
+            lines |= ACCEL_LINE;
+        }
+        if ((mXmRegisters[LSM9DS0Constants.CTRL_REG4_XM] & (motion << 5)) != 0) {
+            lines |= MAG_LINE;
+        }
+        return lines;
+    }
+
+    /**
+     * Pending motion requests as TAP INT1 INT2 in bits 2 to 0, the order of their routing
+     * bits
+     */
+    private int motionRequests() {
+        int requests = 0;
+        if ((mXmRegisters[LSM9DS0Constants.CLICK_SRC] & MOTION_ACTIVE) != 0) {
+            requests |= 0x4;
+        }
+        if ((mXmRegisters[LSM9DS0Constants.INT_GEN_1_SRC] & MOTION_ACTIVE) != 0) {
+            requests |= 0x2;
+        }
+        if ((mXmRegisters[LSM9DS0Constants.INT_GEN_2_SRC] & MOTION_ACTIVE) != 0) {
+            requests |= 0x1;
+        }
+        return requests;
+    }
+
+    private void generate() {
+        float t = mSample++ * mSampleInterval;
+
+        // Tilted by up to 20 degrees, turning about z at 0.5 rad/s
+        float tilt = 0.35f * (float) Math.sin(t * 0.2f);
+        float heading = 0.5f * t;
+        float ax = (float) (Math.sin(tilt) * Math.cos(heading));
+        float ay = (float) (Math.sin(tilt) * Math.sin(heading));
+        float az = (float) Math.cos(tilt);
+
+        float gx = 0.07f * 57.3f * (float) Math.cos(t * 0.2f);
+        float gy = 0.0f;
+        float gz = 0.5f * 57.3f;
+
+        float mx = 0.25f * (float) Math.cos(-heading);
+        float my = 0.25f * (float) Math.sin(-heading);
+        float mz = -0.4f;
+
+        float gyroRange = gyroRange();
+        putAxes(mGyroRegisters, LSM9DS0Constants.OUT_X_L_G, gx / gyroRange, gy / gyroRange, gz / gyroRange);
+        float accelRange = accelRange();
+        putAxes(mXmRegisters, LSM9DS0Constants.OUT_X_L_A, ax / accelRange, ay / accelRange, az / accelRange);
+        float magRange = magRange();
+        putAxes(mXmRegisters, LSM9DS0Constants.OUT_X_L_M, mx / magRange, my / magRange, mz / magRange);
+
+        // 8 LSB per degree, 12 bits, around 25 degrees
+        int temperature = (int) (8 * 5 * Math.sin(t * 0.01f)) & 0xFFF;
+        mXmRegisters[LSM9DS0Constants.OUT_TEMP_L_XM] = (byte) temperature;
+        mXmRegisters[LSM9DS0Constants.OUT_TEMP_H_XM] = (byte) (temperature >> 8);
+
+        long now = System.nanoTime();
+        if (isAwake(mGyroOnNanos, gyroRate(), now)) {
+            mGyroRegisters[LSM9DS0Constants.STATUS_REG_G] |= DATA_READY;
+        }
+        if (isAwake(mAccelOnNanos, accelRate(), now)) {
+            mXmRegisters[LSM9DS0Constants.STATUS_REG_A] |= DATA_READY;
+        }
+        if (isAwake(mMagOnNanos, magRate(), now)) {
+            mXmRegisters[LSM9DS0Constants.STATUS_REG_M] |= DATA_READY;
+        }
+    }
+
+    private static boolean isAwake(long onNanos, float rateHz, long now) {
+        return onNanos != 0 && rateHz > 0 && now - onNanos >= (long) (1e9 / rateHz);
+    }
+
+    /**
+     * Track power-up times after a write to a power mode register
+     */
+    private void powerChanged() {
+        long now = System.nanoTime();
+        // PD and at least one axis
+        boolean gyroOn = (mGyroRegisters[LSM9DS0Constants.CTRL_REG1_G] & 0x08) != 0
+                && (mGyroRegisters[LSM9DS0Constants.CTRL_REG1_G] & 0x07) != 0;
+        mGyroOnNanos = gyroOn ? (mGyroOnNanos != 0 ? mGyroOnNanos : now) : 0;
+        boolean accelOn = accelRate() > 0;
+        mAccelOnNanos = accelOn ? (mAccelOnNanos != 0 ? mAccelOnNanos : now) : 0;
+        // MD[1:0] 00 or 01
+        boolean magOn = (mXmRegisters[LSM9DS0Constants.CTRL_REG7_XM] & 0x02) == 0;
+        mMagOnNanos = magOn ? (mMagOnNanos != 0 ? mMagOnNanos : now) : 0;
+    }
+
+    private float gyroRate() {
+        return 95.0f * (1 << ((mGyroRegisters[LSM9DS0Constants.CTRL_REG1_G] >> 6) & 0x3));
+    }
+
+    private float accelRate() {
+        int aodr = (mXmRegisters[LSM9DS0Constants.CTRL_REG1_XM] >> 4) & 0xF;
+        return aodr == 0 ? 0.0f : 3.125f * (1 << (aodr - 1));
+    }
+
+    private float magRate() {
+        return 3.125f * (1 << ((mXmRegisters[LSM9DS0Constants.CTRL_REG5_XM] >> 2) & 0x7));
+    }
+
+    private static boolean isStatusRegister(boolean gyro, int reg) {
+        if (gyro) {
+            return reg == LSM9DS0Constants.STATUS_REG_G;
+        }
+        return reg == LSM9DS0Constants.STATUS_REG_A || reg == LSM9DS0Constants.STATUS_REG_M;
+    }
+
+    private static void putAxes(byte[] registers, int reg, float x, float y, float z) {
+        putAxis(registers, reg, x);
+        putAxis(registers, reg + 2, y);
+        putAxis(registers, reg + 4, z);
+    }
+
+    private static void putAxis(byte[] registers, int reg, float fullScaleFraction) {
+        int value = Math.max(-32768, Math.min(32767, Math.round(fullScaleFraction * 32768)));
+        registers[reg] = (byte) value;
+        registers[reg + 1] = (byte) (value >> 8);
+    }
+
+    private float gyroRange() {
+        switch ((mGyroRegisters[LSM9DS0Constants.CTRL_REG4_G] >> 4) & 0x3) {
+            case 0:
+                return 245.0f;
+            case 1:
+                return 500.0f;
+            default:
+                return 2000.0f;
+        }
+    }
+
+    private float accelRange() {
+        int afs = (mXmRegisters[LSM9DS0Constants.CTRL_REG2_XM] >> 3) & 0x7;
+        return afs >= 4 ? 16.0f : (afs + 1) * 2.0f;
+    }
+
+    private float magRange() {
+        int mfs = (mXmRegisters[LSM9DS0Constants.CTRL_REG6_XM] >> 5) & 0x3;
+        return mfs == 0 ? 2.0f : mfs * 4.0f;
+    }
+
+    private static boolean isOutputRegister(boolean gyro, int reg) {
+        if (gyro) {
+            return reg >= LSM9DS0Constants.OUT_X_L_G && reg <= LSM9DS0Constants.OUT_Z_H_G;
+        }
+        return (reg >= LSM9DS0Constants.OUT_TEMP_L_XM && reg <= LSM9DS0Constants.OUT_Z_H_M)
+                || (reg >= LSM9DS0Constants.OUT_X_L_A && reg <= LSM9DS0Constants.OUT_Z_H_A);
+    }
+
+    /**
+     * Reading the Z high byte of a block marks its data as consumed, reading a motion
+     * source register clears its latched request
+     */
+    private void consumed(byte[] registers, int reg) {
+        if (registers == mGyroRegisters) {
+            if (reg == LSM9DS0Constants.OUT_Z_H_G) {
+                registers[LSM9DS0Constants.STATUS_REG_G] &= ~DATA_READY;
+            }
+        } else if (reg == LSM9DS0Constants.OUT_Z_H_A) {
+            registers[LSM9DS0Constants.STATUS_REG_A] &= ~DATA_READY;
+        } else if (reg == LSM9DS0Constants.OUT_Z_H_M) {
+            registers[LSM9DS0Constants.STATUS_REG_M] &= ~DATA_READY;
+        } else if (reg == LSM9DS0Constants.INT_GEN_1_SRC || reg == LSM9DS0Constants.INT_GEN_2_SRC
+                || reg == LSM9DS0Constants.CLICK_SRC) {
+            registers[reg] = 0;
+        }
+    }
+
+    private class Bus implements I2cBus {
+        private final byte[] mRegisters;
+        private final BusStatistics mStatistics = new BusStatistics();
+
+        // 32 samples of 6 bytes, oldest first
+        private final int mFifoEnableReg;
+        private final int mFifoCtrlReg;
+        private final int mFifoSrcReg;
+        private final int mFifoOutputReg;
+        private final byte[] mFifo = new byte[LSM9DS0FifoBatch.CAPACITY * 6];
+        private int mFifoLevel = 0;
+        private int mFifoPosition = 0;
+        private boolean mFifoOverrun = false;
+
+        Bus(byte[] registers, int fifoEnableReg, int fifoCtrlReg, int fifoSrcReg, int fifoOutputReg) {
+            mRegisters = registers;
+            mFifoEnableReg = fifoEnableReg;
+            mFifoCtrlReg = fifoCtrlReg;
+            mFifoSrcReg = fifoSrcReg;
+            mFifoOutputReg = fifoOutputReg;
+        }
+
+        private boolean isFifoEnabled() {
+            return (mRegisters[mFifoEnableReg] & FIFO_EN) != 0 && (mRegisters[mFifoCtrlReg] & 0xE0) != 0;
+        }
+
+        /**
+         * Queue the current output registers. Stream mode drops the oldest sample when
+         * full, the other modes stop filling.
+         */
+        void push() {
+            if (!isFifoEnabled()) {
+                return;
+            }
+            if (mFifoLevel == LSM9DS0FifoBatch.CAPACITY) {
+                mFifoOverrun = true;
+                if (((mRegisters[mFifoCtrlReg] >> 5) & 0x7) != FIFO_STREAM) {
+                    return;
+                }
+                pop();
+            }
+            System.arraycopy(mRegisters, mFifoOutputReg, mFifo, mFifoLevel * 6, 6);
+            mFifoLevel++;
+        }
+
+        private void pop() {
+            System.arraycopy(mFifo, 6, mFifo, 0, (mFifoLevel - 1) * 6);
+            mFifoLevel--;
+            mFifoPosition = 0;
+        }
+
+        private byte fifoSource() {
+            if (mFifoLevel == 0) {
+                return (byte) FIFO_EMPTY;
+            }
+            int source = mFifoOverrun ? FIFO_OVERRUN | 0x1F : Math.min(mFifoLevel, 0x1F);
+            int watermark = mRegisters[mFifoCtrlReg] & 0x1F;
+            if (watermark > 0 && mFifoLevel >= watermark) {
+                source |= FIFO_WATERMARK;
+            }
+            return (byte) source;
+        }
+
+        /**
+         * Next byte of the oldest queued sample, popping it once all 6 bytes are read
+         */
+        private byte readFifo() {
+            if (mFifoLevel == 0) {
+                return 0;
+            }
+            byte value = mFifo[mFifoPosition++];
+            if (mFifoPosition == 6) {
+                pop();
+                mFifoOverrun = false;
+            }
+            return value;
+        }
+
+        @Override
+        public byte readRegByte(int reg) {
+            synchronized (FakeLSM9DS0.this) {
+                if (mStepOnRead && isStatusRegister(mRegisters == mGyroRegisters, reg & 0x7F)) {
+                    generate();
+                }
+                byte value = read(reg & 0x7F);
+                // address, register, address again, data
+                mStatistics.record(1, 1, wireNanos(4));
+                return value;
+            }
+        }
+
+        @Override
+        public void writeRegByte(int reg, byte data) {
+            synchronized (FakeLSM9DS0.this) {
+                mRegisters[reg & 0x7F] = data;
+                if ((reg & 0x7F) == mFifoCtrlReg && (data & 0xE0) == 0) {
+                    // Bypass mode empties the FIFO
+                    mFifoLevel = 0;
+                    mFifoPosition = 0;
+                    mFifoOverrun = false;
+                }
+                powerChanged();
+                mStatistics.record(0, 2, wireNanos(3));
+            }
+        }
+
+        @Override
+        public void readRegBuffer(int reg, byte[] buffer, int length) {
+            synchronized (FakeLSM9DS0.this) {
+                boolean autoIncrement = (reg & AUTO_INCREMENT) != 0;
+                int address = reg & 0x7F;
+                if (address == mFifoOutputReg && isFifoEnabled()) {
+                    // Auto-increment wraps within the output block, popping each sample
+                    for (int i = 0; i < length; i++) {
+                        buffer[i] = readFifo();
+                    }
+                    mStatistics.record(length, 1, wireNanos(3 + length));
+                    return;
+                }
+                if (mStepOnRead && isOutputRegister(mRegisters == mGyroRegisters, address)) {
+                    generate();
+                }
+                for (int i = 0; i < length; i++) {
+                    buffer[i] = read(address);
+                    if (autoIncrement) {
+                        address = (address + 1) & 0x7F;
+                    }
+                }
+                mStatistics.record(length, 1, wireNanos(3 + length));
+            }
+        }
+
+        private byte read(int address) {
+            if (address == mFifoSrcReg) {
+                return fifoSource();
+            }
+            byte value = mRegisters[address];
+            consumed(mRegisters, address);
+            return value;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private class Pin implements InputPin {
+        private final int mLine;
+        private volatile OnEdgeListener mListener;
+
+        Pin(int line) {
+            mLine = line;
+        }
+
+        void fire() {
+            OnEdgeListener listener = mListener;
+            if (listener != null) {
+                listener.onEdge(this);
+            }
+        }
+
+        @Override
+        public boolean getValue() {
+            synchronized (FakeLSM9DS0.this) {
+                return (interruptLines() & mLine) != 0;
+            }
+        }
+
+        @Override
+        public void setOnEdgeListener(OnEdgeListener listener) {
+            mListener = listener;
+        }
+
+        @Override
+        public void close() {
+            mListener = null;
+        }
+    }
+
+    private static long wireNanos(int bytes) {
+        // 9 clocks per byte with the ACK bit
+        return (bytes * 9L * 1000000000L) / I2C_FREQUENCY;
+    }
+}
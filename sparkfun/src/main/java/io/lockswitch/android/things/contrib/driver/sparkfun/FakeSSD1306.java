@@ -0,0 +1,259 @@
+/*
+ * Copyright 2017 Choong Hong Cheng, Lockswitch Sdn Bhd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.lockswitch.android.things.contrib.driver.sparkfun;
+
+import java.io.IOException;
+
+/**
+ * In-memory SSD1306 on a fake SPI bus. Decodes the command and data bytes written by
+ * {@link SSD1306} into the controller RAM so frames can be checked and flush paths
+ * benchmarked without hardware:
+ * <pre>
+ * FakeSSD1306 panel = new FakeSSD1306();
+ * SSD1306 ssd1306 = new SSD1306(panel, panel.getDcPin(), panel.getResetPin(), false);
+ * </pre>
+ * Only page addressing mode is decoded, which is what the driver uses.
+ */
+public class FakeSSD1306 implements SpiBus {
+    // Controller RAM is 128x64, the 64x48 panel shows columns 32 to 95 of pages 0 to 5
+    private static final int RAM_COLUMNS = 128;
+    private static final int RAM_PAGES = 8;
+    private static final int PANEL_COLUMN_OFFSET = 32;
+    private static final int PANEL_WIDTH = 64;
+    private static final int PANEL_PAGES = 6;
+
+    private final byte[][] mRam = new byte[RAM_PAGES][RAM_COLUMNS];
+    private int mPage = 0;
+    private int mColumn = 0;
+
+    // Multi byte command being decoded
+    private int mCommand = 0;
+    private int mArgumentsLeft = 0;
+
+    private boolean mDataMode = true;
+    private boolean mDisplayOn = false;
+    private boolean mInverted = false;
+    private boolean mScrolling = false;
+    private int mContrast = 0x7F;
+
+    private long mCommandBytes = 0;
+    private long mDataBytes = 0;
+    private long mResets = 0;
+
+    // Wire time is modeled from the SPI clock rather than measured
+    private final int mFrequency;
+    private final BusStatistics mStatistics = new BusStatistics();
+
+    private final OutputPin mDcPin = new OutputPin() {
+        @Override
+        public void setValue(boolean high) {
+            synchronized (FakeSSD1306.this) {
+                mDataMode = high;
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    private final OutputPin mResetPin = new OutputPin() {
+        @Override
+        public void setValue(boolean high) {
+            if (!high) {
+                reset();
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    public FakeSSD1306() {
+        this(10000000);
+    }
+
+    /**
+     * @param frequency SPI clock in Hz used to model the transaction time
+     */
+    public FakeSSD1306(int frequency) {
+        mFrequency = frequency;
+    }
+
+    public OutputPin getDcPin() {
+        return mDcPin;
+    }
+
+    public OutputPin getResetPin() {
+        return mResetPin;
+    }
+
+    @Override
+    public synchronized void write(byte[] buffer, int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            if (mDataMode) {
+                data(buffer[i]);
+            } else {
+                command(buffer[i] & 0xFF);
+            }
+        }
+        mStatistics.record(0, length, (length * 8L * 1000000000L) / mFrequency);
+    }
+
+    private void data(byte value) {
+        mDataBytes++;
+        mRam[mPage][mColumn] = value;
+        // Page addressing mode wraps within the page
+        mColumn = (mColumn + 1) % RAM_COLUMNS;
+    }
+
+    private void command(int c) {
+        mCommandBytes++;
+
+        if (mArgumentsLeft > 0) {
+            mArgumentsLeft--;
+            if (mCommand == 0x81) {
+                mContrast = c;
+            }
+            return;
+        }
+
+        mCommand = c;
+        if (c <= 0x0F) {
+            mColumn = (mColumn & 0xF0) | c;
+        } else if (c <= 0x1F) {
+            mColumn = ((c & 0x0F) << 4) | (mColumn & 0x0F);
+        } else if (c >= 0xB0 && c <= 0xB7) {
+            mPage = c & 0x07;
+        } else {
+            switch (c) {
+                case 0xAE:
+                case 0xAF:
+                    mDisplayOn = c == 0xAF;
+                    break;
+                case 0xA6:
+                case 0xA7:
+                    mInverted = c == 0xA7;
+                    break;
+                case 0x2E:
+                case 0x2F:
+                    mScrolling = c == 0x2F;
+                    break;
+                default:
+                    mArgumentsLeft = argumentCount(c);
+                    break;
+            }
+        }
+    }
+
+    private static int argumentCount(int command) {
+        switch (command) {
+            case 0x81: // contrast
+            case 0x20: // memory mode
+            case 0x8D: // charge pump
+            case 0xA8: // multiplex
+            case 0xD3: // display offset
+            case 0xD5: // clock divider
+            case 0xD9: // precharge
+            case 0xDA: // com pins
+            case 0xDB: // vcom deselect
+                return 1;
+            case 0x21: // column address
+            case 0x22: // page address
+            case 0xA3: // vertical scroll area
+                return 2;
+            case 0x29:
+            case 0x2A:
+                return 5;
+            case 0x26:
+            case 0x27:
+                return 6;
+            default:
+                return 0;
+        }
+    }
+
+    private synchronized void reset() {
+        mResets++;
+        mPage = 0;
+        mColumn = 0;
+        mArgumentsLeft = 0;
+        mDisplayOn = false;
+        mInverted = false;
+        mScrolling = false;
+        mContrast = 0x7F;
+    }
+
+    /**
+     * Pixel as shown on the 64x48 panel
+     * @param x
+     * @param y
+     * @return true when lit
+     */
+    public synchronized boolean getPixel(int x, int y) {
+        return (mRam[y / 8][PANEL_COLUMN_OFFSET + x] & (1 << (y % 8))) != 0;
+    }
+
+    /**
+     * Copy of the visible RAM in the same layout as the SSD1306 driver buffer
+     * @return 384 bytes, one page of 64 columns after the other
+     */
+    public synchronized byte[] getFrame() {
+        byte[] frame = new byte[PANEL_WIDTH * PANEL_PAGES];
+        for (int page = 0; page < PANEL_PAGES; page++) {
+            System.arraycopy(mRam[page], PANEL_COLUMN_OFFSET, frame, page * PANEL_WIDTH, PANEL_WIDTH);
+        }
+        return frame;
+    }
+
+    public synchronized boolean isDisplayOn() {
+        return mDisplayOn;
+    }
+
+    public synchronized boolean isInverted() {
+        return mInverted;
+    }
+
+    public synchronized boolean isScrolling() {
+        return mScrolling;
+    }
+
+    public synchronized int getContrast() {
+        return mContrast;
+    }
+
+    public synchronized long getCommandBytes() {
+        return mCommandBytes;
+    }
+
+    public synchronized long getDataBytes() {
+        return mDataBytes;
+    }
+
+    public synchronized long getResets() {
+        return mResets;
+    }
+
+    public BusStatistics getStatistics() {
+        return mStatistics;
+    }
+
+    @Override
+    public void close() {
+    }
+}
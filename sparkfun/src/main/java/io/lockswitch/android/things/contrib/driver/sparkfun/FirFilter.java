@@ -0,0 +1,109 @@
+/*
+ * Copyright 2017 Choong Hong Cheng, Lockswitch Sdn Bhd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.lockswitch.android.things.contrib.driver.sparkfun;
+
+/**
+ * Finite impulse response filter over a circular history, primed with the first sample
+ */
+public class FirFilter implements SampleFilter {
+    private final float[] coefficients;
+    // Past inputs twice over, so the newest taps are always one contiguous run
+    private final float[] history;
+    private int position = 0;
+    private boolean primed = false;
+
+    /**
+     * @param coefficients taps, newest sample first
+     */
+    public FirFilter(float[] coefficients) {
+        if (coefficients.length == 0) {
+            throw new IllegalArgumentException("FIR filter needs at least one tap");
+        }
+        this.coefficients = coefficients.clone();
+        history = new float[coefficients.length * 2];
+    }
+
+    /**
+     * @param taps
+     * @return equal weights summing to 1
+     */
+    public static FirFilter movingAverage(int taps) {
+        float[] coefficients = new float[taps];
+        for (int i = 0; i < taps; i++) {
+            coefficients[i] = 1.0f / taps;
+        }
+        return new FirFilter(coefficients);
+    }
+
+    /**
+     * Windowed sinc low pass with a Hamming window
+     * @param sampleRateHz
+     * @param cutoffHz
+     * @param taps odd for a symmetric response
+     * @return low pass filter with unity DC gain
+     */
+    public static FirFilter lowPass(float sampleRateHz, float cutoffHz, int taps) {
+        float[] coefficients = new float[taps];
+        double fc = cutoffHz / sampleRateHz;
+        double middle = (taps - 1) / 2.0;
+        double sum = 0.0;
+        for (int i = 0; i < taps; i++) {
+            double n = i - middle;
+            double sinc = n == 0.0 ? 2.0 * fc : Math.sin(2.0 * Math.PI * fc * n) / (Math.PI * n);
+            double window = taps == 1 ? 1.0 : 0.54 - 0.46 * Math.cos(2.0 * Math.PI * i / (taps - 1));
+            coefficients[i] = (float) (sinc * window);
+            sum += coefficients[i];
+        }
+        for (int i = 0; i < taps; i++) {
+            coefficients[i] /= sum;
+        }
+        return new FirFilter(coefficients);
+    }
+
+    @Override
+    public int filter(float[] data, int offset, int count) {
+        int taps = coefficients.length;
+        if (count > 0 && !primed) {
+            for (int i = 0; i < history.length; i++) {
+                history[i] = data[offset];
+            }
+            primed = true;
+        }
+        for (int i = offset; i < offset + count; i++) {
+            // Walk backwards so history[position .. position + taps) is newest first
+            position = position == 0 ? taps - 1 : position - 1;
+            history[position] = data[i];
+            history[position + taps] = data[i];
+            float y = 0.0f;
+            for (int k = 0; k < taps; k++) {
+                y += coefficients[k] * history[position + k];
+            }
+            data[i] = y;
+        }
+        return count;
+    }
+
+    @Override
+    public void reset() {
+        position = 0;
+        primed = false;
+    }
+
+    @Override
+    public SampleFilter copy() {
+        return new FirFilter(coefficients);
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2017 Choong Hong Cheng, Lockswitch Sdn Bhd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.lockswitch.android.things.contrib.driver.sparkfun;
+
+/**
+ * {@link Fonts} table packed into SSD1306 column bytes, one byte per glyph column with
+ * the top pixel in the LSB. Glyphs drawn at a y that is not a multiple of 8 span two
+ * pages, the shifted columns for each of the 7 possible offsets are built on first use
+ * and cached.
+ */
+public class FontAtlas {
+    private static final int GLYPHS = 96;
+    private static final int FIRST_CHAR = 32;
+
+    private static final Fonts.Type[] TYPES = Fonts.Type.values();
+    private static final FontAtlas[] ATLASES = new FontAtlas[TYPES.length];
+
+    // mLow[shift] holds the part of each column landing on the glyph's first page,
+    // mHigh[shift] the part carried over to the next page
+    private final byte[][] mLow = new byte[8][];
+    private final byte[][] mHigh = new byte[8][];
+
+    private FontAtlas(char[][] font) {
+        byte[] columns = new byte[GLYPHS * Fonts.CHAR_WIDTH];
+        for (int i = 0; i < GLYPHS; i++) {
+            for (int j = 0; j < Fonts.CHAR_WIDTH; j++) {
+                columns[i * Fonts.CHAR_WIDTH + j] = (byte) font[i][j];
+            }
+        }
+        mLow[0] = columns;
+    }
+
+    /**
+     * Atlas for a font type, packed on first use
+     * @param type
+     * @return FontAtlas
+     */
+    public static synchronized FontAtlas get(Fonts.Type type) {
+        FontAtlas atlas = ATLASES[type.ordinal()];
+        if (atlas == null) {
+            atlas = new FontAtlas(fontTable(type));
+            ATLASES[type.ordinal()] = atlas;
+        }
+        return atlas;
+    }
+
+    /**
+     * Offset of a character's first column in the column arrays
+     * @param c
+     * @return index, or -1 when the character has no glyph
+     */
+    public static int glyphOffset(char c) {
+        int index = c - FIRST_CHAR;
+        if (index < 0 || index >= GLYPHS) {
+            return -1;
+        }
+        return index * Fonts.CHAR_WIDTH;
+    }
+
+    /**
+     * Glyph columns shifted down by shift pixels, the part on the first page
+     * @param shift 0 to 7
+     * @return columns indexed by {@link #glyphOffset(char)}
+     */
+    public synchronized byte[] getLowColumns(int shift) {
+        if (mLow[shift] == null) {
+            buildShift(shift);
+        }
+        return mLow[shift];
+    }
+
+    /**
+     * Glyph columns shifted down by shift pixels, the part carried over to the next page
+     * @param shift 1 to 7
+     * @return columns indexed by {@link #glyphOffset(char)}
+     */
+    public synchronized byte[] getHighColumns(int shift) {
+        if (mHigh[shift] == null) {
+            buildShift(shift);
+        }
+        return mHigh[shift];
+    }
+
+    /**
+     * Pixels of the first page covered by a glyph shifted down by shift pixels
+     * @param shift
+     * @return mask
+     */
+    public static int lowMask(int shift) {
+        return (0xFF << shift) & 0xFF;
+    }
+
+    /**
+     * Pixels of the next page covered by a glyph shifted down by shift pixels
+     * @param shift
+     * @return mask
+     */
+    public static int highMask(int shift) {
+        return 0xFF >> (8 - shift);
+    }
+
+    private void buildShift(int shift) {
+        byte[] columns = mLow[0];
+        byte[] low = new byte[columns.length];
+        byte[] high = new byte[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            int column = columns[i] & 0xFF;
+            low[i] = (byte) (column << shift);
+            high[i] = (byte) (column >> (8 - shift));
+        }
+        mLow[shift] = low;
+        mHigh[shift] = high;
+    }
+
+    private static char[][] fontTable(Fonts.Type type) {
+        switch (type) {
+            case fontAcme5Outlines:
+                return Fonts.fontAcme5Outlines;
+            case fontAztech:
+                return Fonts.fontAztech;
+            case fontCrackers:
+                return Fonts.fontCrackers;
+            case fontSuperDig:
+                return Fonts.fontSuperDig;
+            case fontZxpix:
+                return Fonts.fontZxpix;
+            case fontBlokus:
+                return Fonts.fontBlokus;
+            case fontBMplain:
+                return Fonts.fontBMplain;
+            case font5x5:
+            default:
+                return Fonts.font5x5;
+        }
+    }
+}
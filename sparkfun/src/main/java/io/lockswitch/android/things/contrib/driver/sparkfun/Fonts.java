@@ -29,7 +29,7 @@ public interface Fonts {
     public static int CHAR_HEIGHT = 8;
 
     public enum Type {
-        font5x5,fontAcme5Outlines,fontAztech,fontCrackers,fontSuperDig,fontZxpix
+        font5x5,fontAcme5Outlines,fontAztech,fontCrackers,fontSuperDig,fontZxpix,fontBlokus,fontBMplain
     }
 
     public static char[][] font5x5 = {
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2017 Choong Hong Cheng, Lockswitch Sdn Bhd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.lockswitch.android.things.contrib.driver.sparkfun;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Register oriented I2C device, see {@link PioI2cBus} for the Android Things implementation
+ * and {@link FakeLSM9DS0} for an in-memory one
+ */
+public interface I2cBus extends Closeable {
+    /**
+     * Read one register
+     * @param reg
+     * @return byte
+     * @throws IOException
+     */
+    byte readRegByte(int reg) throws IOException;
+
+    /**
+     * Write one register
+     * @param reg
+     * @param data
+     * @throws IOException
+     */
+    void writeRegByte(int reg, byte data) throws IOException;
+
+    /**
+     * Read length bytes starting at reg in one transaction
+     * @param reg
+     * @param buffer
+     * @param length
+     * @throws IOException
+     */
+    void readRegBuffer(int reg, byte[] buffer, int length) throws IOException;
+}
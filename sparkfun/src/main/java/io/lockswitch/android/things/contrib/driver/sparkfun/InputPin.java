@@ -0,0 +1,46 @@
+/*
+ * Copyright 2017 Choong Hong Cheng, Lockswitch Sdn Bhd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.lockswitch.android.things.contrib.driver.sparkfun;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Digital input line with rising edge notification, see {@link PioInputPin} for the
+ * Android Things implementation
+ */
+public interface InputPin extends Closeable {
+    interface OnEdgeListener {
+        /**
+         * The line went high
+         * @param pin
+         */
+        void onEdge(InputPin pin);
+    }
+
+    /**
+     * @return true for the high level
+     * @throws IOException
+     */
+    boolean getValue() throws IOException;
+
+    /**
+     * @param listener called on every rising edge, null to stop listening
+     * @throws IOException
+     */
+    void setOnEdgeListener(OnEdgeListener listener) throws IOException;
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2017 Choong Hong Cheng, Lockswitch Sdn Bhd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.lockswitch.android.things.contrib.driver.sparkfun;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of how late periodic work ran, in power of two microsecond buckets: under
+ * 1 us, 1-2 us, 2-4 us and so on up to 2^(BUCKETS - 2) us and over. Recorded by one
+ * thread and read by any without locks, a reader may see a recording half applied.
+ */
+public class JitterHistogram {
+    public static final int BUCKETS = 24;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private volatile long count = 0;
+    private volatile long totalNanos = 0;
+    private volatile long maxNanos = 0;
+
+    /**
+     * @param lateNanos time past the deadline, early counts as 0
+     */
+    public void record(long lateNanos) {
+        long nanos = Math.max(0, lateNanos);
+        counts.incrementAndGet(bucket(nanos));
+        totalNanos += nanos;
+        if (nanos > maxNanos) {
+            maxNanos = nanos;
+        }
+        count++;
+    }
+
+    private static int bucket(long nanos) {
+        long micros = nanos / 1000;
+        // 0 for under 1 us, then 1 + floor(log2(micros))
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    /**
+     * Start over, only safe while nothing is recording
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count = 0;
+        totalNanos = 0;
+        maxNanos = 0;
+    }
+
+    /**
+     * @return recordings so far
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @param bucket 0 to BUCKETS - 1
+     * @return recordings in the bucket
+     */
+    public long getCount(int bucket) {
+        return counts.get(bucket);
+    }
+
+    /**
+     * @param bucket 0 to BUCKETS - 1
+     * @return exclusive upper bound of the bucket in microseconds, Long.MAX_VALUE for the last
+     */
+    public static long getBucketLimitMicros(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    /**
+     * @param fraction e.g. 0.99
+     * @return upper bound in microseconds of the bucket the fraction of recordings falls
+     * under, 0 with no recordings
+     */
+    public long getPercentileMicros(double fraction) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        long target = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target && seen > 0) {
+                return getBucketLimitMicros(i);
+            }
+        }
+        return 0;
+    }
+
+    public double getMeanMicros() {
+        long n = count;
+        return n == 0 ? 0.0 : totalNanos / 1000.0 / n;
+    }
+
+    public long getMaxMicros() {
+        return maxNanos / 1000;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d samples, mean %.1f us, p50 < %d us, p99 < %d us, max %d us",
+                getCount(), getMeanMicros(), getPercentileMicros(0.5), getPercentileMicros(0.99),
+                getMaxMicros());
+    }
+}
@@ -18,7 +18,6 @@ package io.lockswitch.android.things.contrib.driver.sparkfun;
 
 import android.util.Log;
 
-import com.google.android.things.pio.I2cDevice;
 import com.google.android.things.pio.PeripheralManagerService;
 
 import java.io.Closeable;
@@ -34,8 +33,8 @@ public class LSM9DS0 implements Closeable {
 
     private static final String TAG = LSM9DS0.class.getSimpleName();
 
-    private I2cDevice gyro;
-    private I2cDevice xm;
+    private I2cBus gyro;
+    private I2cBus xm;
 
     // We'll store the gyro, accel, and magnetometer readings in a series of
     // public class variables. Each sensor gets three variables -- one for each
@@ -57,7 +56,75 @@ public class LSM9DS0 implements Closeable {
     // This value is calculated as (sensor scale) / (2^15).
     private float gRes=0.0f, aRes=0.0f, mRes=0.0f;
 
+    // readSample() reads the XM device from the temperature output up to the last
+    // accelerometer output in one auto-increment burst, 41 bytes for the 14 used. The
+    // registers in between come along, including INT_SRC_REG_M (0x13) which clears on
+    // read, so every sample consumes a latched magnetometer threshold interrupt. See
+    // setSplitXmBurst() for two bursts that skip it.
+    private static final int XM_BURST_START = LSM9DS0Constants.OUT_TEMP_L_XM;
+    private static final int XM_BURST_LENGTH = LSM9DS0Constants.OUT_Z_H_A - XM_BURST_START + 1;
+    // Temperature, STATUS_REG_M and the magnetometer outputs, 0x05 to 0x0D
+    private static final int TEMP_MAG_LENGTH = LSM9DS0Constants.OUT_Z_H_M - XM_BURST_START + 1;
+    private final byte[] xmBurst = new byte[XM_BURST_LENGTH];
+    private final byte[] accelBurst = new byte[6];
+    private boolean splitXmBurst = false;
+    private final byte[] gyroBurst = new byte[6];
+
+    // Reused by the single sensor reads, so no read allocates
+    private final byte[] scratch = new byte[6];
+
+    // FIFO_SRC_REG_G and FIFO_SRC_REG: WTM OVRN EMPTY FSS4 FSS3 FSS2 FSS1 FSS0
+    private static final int FIFO_OVERRUN = 0x40;
+    private static final int FIFO_EMPTY = 0x20;
+    private static final int FIFO_LEVEL = 0x1F;
+    private final byte[] fifoBurst = new byte[LSM9DS0FifoBatch.CAPACITY * 6];
+
+    // Shadow copies of the registers written by this driver, indexed by sub-address, so
+    // read-modify-write updates only need the write
+    private static final int SHADOW_SIZE = 0x40;
+    private final byte[] gShadow = new byte[SHADOW_SIZE];
+    private final byte[] xmShadow = new byte[SHADOW_SIZE];
+    private final boolean[] gShadowValid = new boolean[SHADOW_SIZE];
+    private final boolean[] xmShadowValid = new boolean[SHADOW_SIZE];
+    private boolean verifyShadow = false;
+    private int shadowDrift = 0;
+
+    // Current output data rates, the FIFO sample timestamps are spaced by their period
+    private LSM9DS0Constants.gyro_odr gRate = LSM9DS0Constants.gyro_odr.G_ODR_95_BW_125;
+    private LSM9DS0Constants.accel_odr aRate = LSM9DS0Constants.accel_odr.A_ODR_100;
+    private LSM9DS0Constants.mag_odr mRate = LSM9DS0Constants.mag_odr.M_ODR_100;
+
+    // Calibration converted to raw counts at the current scales whenever a resolution
+    // changes, so correcting a reading costs a subtraction per gyro axis and a few
+    // multiplies for the accelerometer and magnetometer
+    private LSM9DS0Calibration calibration;
+    private boolean calibrated = false;
+    private final int[] gBias = new int[3];
+    private final float[] aOffset = new float[3];
+    private final float[] aGain = new float[3];
+    private final float[] mOffset = new float[3];
+    private final float[] mMatrix = new float[9];
+    private final int[] magCorrected = new int[3];
+
     public LSM9DS0(int gyroAdddress, int xmAddress) throws IOException {
+        this(firstI2cBus(), gyroAdddress, xmAddress);
+    }
+
+    private LSM9DS0(String i2cName, int gyroAdddress, int xmAddress) throws IOException {
+        this(PioI2cBus.open(i2cName, gyroAdddress), PioI2cBus.open(i2cName, xmAddress));
+    }
+
+    /**
+     * Drive a LSM9DS0 through any bus implementation, e.g. {@link FakeLSM9DS0}
+     * @param gyroBus gyroscope device
+     * @param xmBus accelerometer and magnetometer device
+     */
+    public LSM9DS0(I2cBus gyroBus, I2cBus xmBus) {
+        gyro = gyroBus;
+        xm = xmBus;
+    }
+
+    private static String firstI2cBus() throws IOException {
         PeripheralManagerService peripheralManagerService = new PeripheralManagerService();
 
         // Make sure there is available I2C
@@ -70,8 +137,7 @@ public class LSM9DS0 implements Closeable {
         }
 
         // Asssumption here to use the first available i2c
-        gyro = peripheralManagerService.openI2cDevice(i2cList.get(0), gyroAdddress);
-        xm = peripheralManagerService.openI2cDevice(i2cList.get(0), xmAddress);
+        return i2cList.get(0);
     }
 
     public int begin(LSM9DS0Constants.gyro_scale gScl, LSM9DS0Constants.accel_scale aScl, LSM9DS0Constants.mag_scale mScl,
@@ -265,54 +331,514 @@ public class LSM9DS0 implements Closeable {
         xmWriteByte(LSM9DS0Constants.INT_CTRL_REG_M, (byte)0x09); // Enable interrupts for mag, active-low, push-pull
     }
 
+    /**
+     * Read every sensor with one burst per device, two I2C transactions in total. The
+     * public gx..mz and temperature fields are updated as well.
+     * @param sample filled in place
+     * @throws IOException
+     */
+    public void readSample(LSM9DS0Sample sample) throws IOException {
+        gReadBytes(LSM9DS0Constants.OUT_X_L_G, gyroBurst, 6);
+        sample.gx = gyroAxis(gyroBurst, 0, 0);
+        sample.gy = gyroAxis(gyroBurst, 2, 1);
+        sample.gz = gyroAxis(gyroBurst, 4, 2);
+        readAccelMagTemp(sample);
+
+        gx = sample.gx; gy = sample.gy; gz = sample.gz;
+        ax = sample.ax; ay = sample.ay; az = sample.az;
+        mx = sample.mx; my = sample.my; mz = sample.mz;
+        temperature = sample.temperature;
+    }
+
+    /**
+     * Read the accelerometer, magnetometer and temperature with one XM burst, without
+     * touching the public fields
+     * @param sample ax..mz and temperature are filled
+     * @throws IOException
+     */
+    public void readAccelMagTemp(LSM9DS0Sample sample) throws IOException {
+        byte[] accel;
+        int a;
+        if (splitXmBurst) {
+            xmReadBytes(XM_BURST_START, xmBurst, TEMP_MAG_LENGTH);
+            xmReadBytes(LSM9DS0Constants.OUT_X_L_A, accelBurst, 6);
+            accel = accelBurst;
+            a = 0;
+        } else {
+            xmReadBytes(XM_BURST_START, xmBurst, XM_BURST_LENGTH);
+            accel = xmBurst;
+            a = LSM9DS0Constants.OUT_X_L_A - XM_BURST_START;
+        }
+        sample.timestamp = System.nanoTime();
+
+        sample.temperature = toTemperature(xmBurst, LSM9DS0Constants.OUT_TEMP_L_XM - XM_BURST_START);
+        magAxes(xmBurst, LSM9DS0Constants.OUT_X_L_M - XM_BURST_START);
+        sample.mx = magCorrected[0];
+        sample.my = magCorrected[1];
+        sample.mz = magCorrected[2];
+        sample.ax = accelAxis(accel, a, 0);
+        sample.ay = accelAxis(accel, a + 2, 1);
+        sample.az = accelAxis(accel, a + 4, 2);
+    }
+
+    /**
+     * Read the XM device of {@link #readSample} in two bursts, temperature and
+     * magnetometer then accelerometer, 15 bytes instead of 41. This leaves INT_SRC_REG_M
+     * alone, which the single burst reads and so clears on every sample; use it when
+     * relying on latched magnetometer interrupts. The single burst is the default as one
+     * transaction usually costs more than the extra bytes.
+     * @param split
+     */
+    public void setSplitXmBurst(boolean split) {
+        splitXmBurst = split;
+    }
+
+    /**
+     * Little endian signed 16-bit output register pair
+     */
+    private static int toShort(byte[] data, int offset) {
+        return (short) ((data[offset + 1] << 8) | (data[offset] & 0xFF));
+    }
+
+    /**
+     * Gyroscope output register pair less the calibrated bias
+     */
+    private int gyroAxis(byte[] data, int offset, int axis) {
+        return toShort(data, offset) - gBias[axis];
+    }
+
+    /**
+     * Accelerometer output register pair with the calibrated offset and scale applied
+     */
+    private int accelAxis(byte[] data, int offset, int axis) {
+        int raw = toShort(data, offset);
+        return calibrated ? Math.round((raw - aOffset[axis]) * aGain[axis]) : raw;
+    }
+
+    /**
+     * Magnetometer output registers with the hard and soft iron corrections applied, into
+     * magCorrected
+     */
+    private void magAxes(byte[] data, int offset) {
+        int x = toShort(data, offset);
+        int y = toShort(data, offset + 2);
+        int z = toShort(data, offset + 4);
+        if (!calibrated) {
+            magCorrected[0] = x;
+            magCorrected[1] = y;
+            magCorrected[2] = z;
+            return;
+        }
+        float cx = x - mOffset[0];
+        float cy = y - mOffset[1];
+        float cz = z - mOffset[2];
+        magCorrected[0] = Math.round(mMatrix[0] * cx + mMatrix[1] * cy + mMatrix[2] * cz);
+        magCorrected[1] = Math.round(mMatrix[3] * cx + mMatrix[4] * cy + mMatrix[5] * cz);
+        magCorrected[2] = Math.round(mMatrix[6] * cx + mMatrix[7] * cy + mMatrix[8] * cz);
+    }
+
+    /**
+     * Temperature output, a 12-bit signed integer
+     */
+    private static int toTemperature(byte[] data, int offset) {
+        return ((data[offset + 1] << 28) >> 20) | (data[offset] & 0xFF);
+    }
+
     public void readAccel() throws IOException {
-        byte temp[] = new byte[6]; // We'll read six bytes from the accelerometer into temp
-        xmReadBytes(LSM9DS0Constants.OUT_X_L_A, temp, 6); // Read 6 bytes, beginning at OUT_X_L_A
-        ax = (temp[1] << 8) | temp[0]; // Store x-axis values into ax
-        ay = (temp[3] << 8) | temp[2]; // Store y-axis values into ay
-        az = (temp[5] << 8) | temp[4]; // Store z-axis values into az
+        xmReadBytes(LSM9DS0Constants.OUT_X_L_A, scratch, 6); // Read 6 bytes, beginning at OUT_X_L_A
+        ax = accelAxis(scratch, 0, 0); // Store x-axis values into ax
+        ay = accelAxis(scratch, 2, 1); // Store y-axis values into ay
+        az = accelAxis(scratch, 4, 2); // Store z-axis values into az
+    }
+
+    /**
+     * Read the accelerometer into a sample, without touching the public fields
+     * @param sample ax, ay and az are filled
+     * @throws IOException
+     */
+    public void readAccel(LSM9DS0Sample sample) throws IOException {
+        xmReadBytes(LSM9DS0Constants.OUT_X_L_A, scratch, 6);
+        sample.ax = accelAxis(scratch, 0, 0);
+        sample.ay = accelAxis(scratch, 2, 1);
+        sample.az = accelAxis(scratch, 4, 2);
+        sample.timestamp = System.nanoTime();
     }
 
     public void readMag() throws IOException {
-        byte temp[] = new byte[6]; // We'll read six bytes from the mag into temp
-        xmReadBytes(LSM9DS0Constants.OUT_X_L_M, temp, 6); // Read 6 bytes, beginning at OUT_X_L_M
-        mx = (temp[1] << 8) | temp[0]; // Store x-axis values into mx
-        my = (temp[3] << 8) | temp[2]; // Store y-axis values into my
-        mz = (temp[5] << 8) | temp[4]; // Store z-axis values into mz
+        xmReadBytes(LSM9DS0Constants.OUT_X_L_M, scratch, 6); // Read 6 bytes, beginning at OUT_X_L_M
+        magAxes(scratch, 0);
+        mx = magCorrected[0]; // Store x-axis values into mx
+        my = magCorrected[1]; // Store y-axis values into my
+        mz = magCorrected[2]; // Store z-axis values into mz
+    }
+
+    /**
+     * Read the magnetometer into a sample, without touching the public fields
+     * @param sample mx, my and mz are filled
+     * @throws IOException
+     */
+    public void readMag(LSM9DS0Sample sample) throws IOException {
+        xmReadBytes(LSM9DS0Constants.OUT_X_L_M, scratch, 6);
+        magAxes(scratch, 0);
+        sample.mx = magCorrected[0];
+        sample.my = magCorrected[1];
+        sample.mz = magCorrected[2];
+        sample.timestamp = System.nanoTime();
     }
 
     public void readTemp() throws IOException {
-        byte temp[] = new byte[2]; // We'll read two bytes from the temperature sensor into temp
-        xmReadBytes(LSM9DS0Constants.OUT_TEMP_L_XM, temp, 2); // Read 2 bytes, beginning at OUT_TEMP_L_M
-        temperature =  temp[0] + (temp[1]<<8); // Temperature is a 12-bit signed integer
+        xmReadBytes(LSM9DS0Constants.OUT_TEMP_L_XM, scratch, 2); // Read 2 bytes, beginning at OUT_TEMP_L_M
+        temperature = toTemperature(scratch, 0); // Temperature is a 12-bit signed integer
+    }
+
+    /**
+     * Read the temperature into a sample, without touching the public fields
+     * @param sample temperature is filled
+     * @throws IOException
+     */
+    public void readTemp(LSM9DS0Sample sample) throws IOException {
+        xmReadBytes(LSM9DS0Constants.OUT_TEMP_L_XM, scratch, 2);
+        sample.temperature = toTemperature(scratch, 0);
+        sample.timestamp = System.nanoTime();
     }
 
     public void readGyro() throws IOException {
-        byte temp[] = new byte[6]; // We'll read six bytes from the gyro into temp
-        gReadBytes(LSM9DS0Constants.OUT_X_L_G, temp, 6); // Read 6 bytes, beginning at OUT_X_L_G
-        gx = (temp[1] << 8) | temp[0]; // Store x-axis values into gx
-        gy = (temp[3] << 8) | temp[2]; // Store y-axis values into gy
-        gz = (temp[5] << 8) | temp[4]; // Store z-axis values into gz
+        gReadBytes(LSM9DS0Constants.OUT_X_L_G, scratch, 6); // Read 6 bytes, beginning at OUT_X_L_G
+        gx = gyroAxis(scratch, 0, 0); // Store x-axis values into gx
+        gy = gyroAxis(scratch, 2, 1); // Store y-axis values into gy
+        gz = gyroAxis(scratch, 4, 2); // Store z-axis values into gz
+    }
+
+    /**
+     * Read the gyroscope into a sample, without touching the public fields
+     * @param sample gx, gy and gz are filled
+     * @throws IOException
+     */
+    public void readGyro(LSM9DS0Sample sample) throws IOException {
+        gReadBytes(LSM9DS0Constants.OUT_X_L_G, scratch, 6);
+        sample.gx = gyroAxis(scratch, 0, 0);
+        sample.gy = gyroAxis(scratch, 2, 1);
+        sample.gz = gyroAxis(scratch, 4, 2);
+        sample.timestamp = System.nanoTime();
+    }
+
+    /**
+     * Buffer gyroscope samples in its 32 slot hardware FIFO, to be drained with
+     * {@link #readGyroFifo(LSM9DS0FifoBatch)}. Any sample already buffered is discarded.
+     * @param mode FIFO_STREAM keeps the newest samples, FIFO_FIFO stops once full
+     * @param watermark level 1-31 to signal on DRDY_G instead of data ready, 0 for none
+     * @throws IOException
+     */
+    public void enableGyroFifo(LSM9DS0Constants.fifo_mode mode, int watermark) throws IOException {
+        // Going through bypass mode empties the FIFO
+        gWriteByte(LSM9DS0Constants.FIFO_CTRL_REG_G, (byte) 0x00);
+        gWriteByte(LSM9DS0Constants.FIFO_CTRL_REG_G, (byte) ((mode.getValue() << 5) | (watermark & FIFO_LEVEL)));
+
+        if (watermark > 0) {
+            // I2_DRDY off, I2_WTM on
+            int temp = gReadControl(LSM9DS0Constants.CTRL_REG3_G);
+            gWriteByte(LSM9DS0Constants.CTRL_REG3_G, (byte) ((temp & ~0x08) | 0x04));
+        }
+
+        // FIFO_EN
+        int temp = gReadControl(LSM9DS0Constants.CTRL_REG5_G);
+        gWriteByte(LSM9DS0Constants.CTRL_REG5_G, (byte) (temp | 0x40));
+    }
+
+    /**
+     * Back to reading the gyroscope output registers one sample at a time
+     * @throws IOException
+     */
+    public void disableGyroFifo() throws IOException {
+        int temp = gReadControl(LSM9DS0Constants.CTRL_REG5_G);
+        gWriteByte(LSM9DS0Constants.CTRL_REG5_G, (byte) (temp & ~0x40));
+        gWriteByte(LSM9DS0Constants.FIFO_CTRL_REG_G, (byte) 0x00);
+
+        // Data ready back on DRDY_G
+        temp = gReadControl(LSM9DS0Constants.CTRL_REG3_G);
+        gWriteByte(LSM9DS0Constants.CTRL_REG3_G, (byte) ((temp & ~0x04) | 0x08));
+    }
+
+    /**
+     * Buffer accelerometer samples in the XM 32 slot hardware FIFO, to be drained with
+     * {@link #readAccelFifo(LSM9DS0FifoBatch)}. Any sample already buffered is discarded.
+     * @param mode FIFO_STREAM keeps the newest samples, FIFO_FIFO stops once full
+     * @param watermark level 1-31 to signal on INT2_XM, 0 for none
+     * @throws IOException
+     */
+    public void enableAccelFifo(LSM9DS0Constants.fifo_mode mode, int watermark) throws IOException {
+        // Going through bypass mode empties the FIFO
+        xmWriteByte(LSM9DS0Constants.FIFO_CTRL_REG, (byte) 0x00);
+        xmWriteByte(LSM9DS0Constants.FIFO_CTRL_REG, (byte) ((mode.getValue() << 5) | (watermark & FIFO_LEVEL)));
+
+        if (watermark > 0) {
+            // P2_WTM
+            int temp = xmReadControl(LSM9DS0Constants.CTRL_REG4_XM);
+            xmWriteByte(LSM9DS0Constants.CTRL_REG4_XM, (byte) (temp | 0x01));
+        }
+
+        // FIFO_EN, and WTM_EN to stop the FIFO depth at the watermark level
+        int temp = xmReadControl(LSM9DS0Constants.CTRL_REG0_XM);
+        xmWriteByte(LSM9DS0Constants.CTRL_REG0_XM, (byte) (temp | 0x40 | (watermark > 0 ? 0x20 : 0x00)));
+    }
+
+    /**
+     * Back to reading the accelerometer output registers one sample at a time
+     * @throws IOException
+     */
+    public void disableAccelFifo() throws IOException {
+        int temp = xmReadControl(LSM9DS0Constants.CTRL_REG0_XM);
+        xmWriteByte(LSM9DS0Constants.CTRL_REG0_XM, (byte) (temp & ~0x60));
+        xmWriteByte(LSM9DS0Constants.FIFO_CTRL_REG, (byte) 0x00);
+
+        temp = xmReadControl(LSM9DS0Constants.CTRL_REG4_XM);
+        xmWriteByte(LSM9DS0Constants.CTRL_REG4_XM, (byte) (temp & ~0x01));
+    }
+
+    /**
+     * Drain every sample pending in the gyroscope FIFO, with one read of the FIFO level and
+     * one burst for the samples
+     * @param batch filled in place, oldest sample first
+     * @return number of samples drained
+     * @throws IOException
+     */
+    public int readGyroFifo(LSM9DS0FifoBatch batch) throws IOException {
+        byte source = gReadByte(LSM9DS0Constants.FIFO_SRC_REG_G);
+        long newest = System.nanoTime();
+        int level = fifoLevel(source);
+        if (level > 0) {
+            // With the FIFO on, auto-increment wraps from OUT_Z_H_G back to OUT_X_L_G and
+            // every wrap pops the next sample
+            gReadBytes(LSM9DS0Constants.OUT_X_L_G, fifoBurst, level * 6);
+        }
+        unpackFifo(batch, level, (source & FIFO_OVERRUN) != 0, newest, gyroRateHz(gRate), true);
+        return level;
+    }
+
+    /**
+     * Drain every sample pending in the accelerometer FIFO, with one read of the FIFO level
+     * and one burst for the samples
+     * @param batch filled in place, oldest sample first
+     * @return number of samples drained
+     * @throws IOException
+     */
+    public int readAccelFifo(LSM9DS0FifoBatch batch) throws IOException {
+        byte source = xmReadByte(LSM9DS0Constants.FIFO_SRC_REG);
+        long newest = System.nanoTime();
+        int level = fifoLevel(source);
+        if (level > 0) {
+            // With the FIFO on, auto-increment wraps from OUT_Z_H_A back to OUT_X_L_A and
+            // every wrap pops the next sample
+            xmReadBytes(LSM9DS0Constants.OUT_X_L_A, fifoBurst, level * 6);
+        }
+        unpackFifo(batch, level, (source & FIFO_OVERRUN) != 0, newest, accelRateHz(aRate), false);
+        return level;
+    }
+
+    /**
+     * Unread samples according to a FIFO source register. FSS only counts to 31, a full
+     * FIFO is flagged by OVRN instead.
+     */
+    private static int fifoLevel(byte source) {
+        if ((source & FIFO_EMPTY) != 0) {
+            return 0;
+        }
+        if ((source & FIFO_OVERRUN) != 0) {
+            return LSM9DS0FifoBatch.CAPACITY;
+        }
+        return source & FIFO_LEVEL;
+    }
+
+    /**
+     * The FIFO does not timestamp samples, so they are spaced back from the time the
+     * level was read by one output data period each
+     */
+    private void unpackFifo(LSM9DS0FifoBatch batch, int level, boolean overrun, long newest, float rateHz,
+                            boolean gyro) {
+        long period = rateHz > 0 ? (long) (1e9 / rateHz) : 0;
+        for (int i = 0; i < level; i++) {
+            int offset = i * 6;
+            if (gyro) {
+                batch.x[i] = gyroAxis(fifoBurst, offset, 0);
+                batch.y[i] = gyroAxis(fifoBurst, offset + 2, 1);
+                batch.z[i] = gyroAxis(fifoBurst, offset + 4, 2);
+            } else {
+                batch.x[i] = accelAxis(fifoBurst, offset, 0);
+                batch.y[i] = accelAxis(fifoBurst, offset + 2, 1);
+                batch.z[i] = accelAxis(fifoBurst, offset + 4, 2);
+            }
+            batch.timestamp[i] = newest - (level - 1 - i) * period;
+        }
+        batch.count = level;
+        batch.overrun = overrun;
+    }
+
+    /**
+     * @param rate
+     * @return gyroscope output data rate, 95, 190, 380 or 760 Hz
+     */
+    static float gyroRateHz(LSM9DS0Constants.gyro_odr rate) {
+        return 95.0f * (1 << (rate.getValue() >> 2));
+    }
+
+    /**
+     * @param rate
+     * @return accelerometer output data rate, 0 when powered down
+     */
+    static float accelRateHz(LSM9DS0Constants.accel_odr rate) {
+        if (rate == LSM9DS0Constants.accel_odr.A_POWER_DOWN) {
+            return 0.0f;
+        }
+        return 3.125f * (1 << (rate.ordinal() - 1));
+    }
+
+    /**
+     * @param rate
+     * @return magnetometer (and temperature) output data rate
+     */
+    static float magRateHz(LSM9DS0Constants.mag_odr rate) {
+        return 3.125f * (1 << rate.ordinal());
+    }
+
+    /**
+     * Slowest gyroscope rate producing at least the requested rate, so no sample is
+     * missed, with the widest bandwidth below half of it
+     * @param hz
+     * @return gyro_odr, the fastest one when none is fast enough
+     */
+    public static LSM9DS0Constants.gyro_odr nearestGyroODR(float hz) {
+        if (hz <= 95.0f) {
+            return LSM9DS0Constants.gyro_odr.G_ODR_95_BW_25;
+        } else if (hz <= 190.0f) {
+            return LSM9DS0Constants.gyro_odr.G_ODR_190_BW_70;
+        } else if (hz <= 380.0f) {
+            return LSM9DS0Constants.gyro_odr.G_ODR_380_BW_100;
+        }
+        return LSM9DS0Constants.gyro_odr.G_ODR_760_BW_100;
+    }
+
+    /**
+     * Slowest accelerometer rate producing at least the requested rate
+     * @param hz
+     * @return accel_odr, the fastest one when none is fast enough
+     */
+    public static LSM9DS0Constants.accel_odr nearestAccelODR(float hz) {
+        LSM9DS0Constants.accel_odr[] rates = LSM9DS0Constants.accel_odr.values();
+        // Skip A_POWER_DOWN
+        for (int i = 1; i < rates.length; i++) {
+            if (accelRateHz(rates[i]) >= hz) {
+                return rates[i];
+            }
+        }
+        return rates[rates.length - 1];
+    }
+
+    /**
+     * Slowest magnetometer rate producing at least the requested rate
+     * @param hz
+     * @return mag_odr, the fastest one when none is fast enough
+     */
+    public static LSM9DS0Constants.mag_odr nearestMagODR(float hz) {
+        LSM9DS0Constants.mag_odr[] rates = LSM9DS0Constants.mag_odr.values();
+        for (LSM9DS0Constants.mag_odr rate : rates) {
+            if (magRateHz(rate) >= hz) {
+                return rate;
+            }
+        }
+        return rates[rates.length - 1];
+    }
+
+    public LSM9DS0Constants.gyro_scale getGyroScale() {
+        return gScale;
+    }
+
+    public LSM9DS0Constants.accel_scale getAccelScale() {
+        return aScale;
+    }
+
+    public LSM9DS0Constants.mag_scale getMagScale() {
+        return mScale;
+    }
+
+    public LSM9DS0Constants.gyro_odr getGyroODR() {
+        return gRate;
+    }
+
+    public LSM9DS0Constants.accel_odr getAccelODR() {
+        return aRate;
     }
 
-    private float calcGyro(int gyro) {
+    public LSM9DS0Constants.mag_odr getMagODR() {
+        return mRate;
+    }
+
+    /**
+     * @param gyro raw reading
+     * @return degrees per second
+     */
+    public float calcGyro(int gyro) {
         // Return the gyro raw reading times our pre-calculated DPS / (ADC tick):
         return gRes * gyro;
     }
 
-    private float calcAccel(int accel) {
+    /**
+     * @param accel raw reading
+     * @return g
+     */
+    public float calcAccel(int accel) {
         // Return the accel raw reading times our pre-calculated g's / (ADC tick):
         return aRes * accel;
     }
 
-    private float calcMag(int mag) {
+    /**
+     * @param mag raw reading
+     * @return gauss
+     */
+    public float calcMag(int mag) {
         // Return the mag raw reading times our pre-calculated Gs / (ADC tick):
         return mRes * mag;
     }
 
-    private void setGyroScale(LSM9DS0Constants.gyro_scale gScl) throws IOException {
-        // We need to preserve the other bytes in CTRL_REG4_G. So, first read it:
-        int temp = gReadByte(LSM9DS0Constants.CTRL_REG4_G);
+    /**
+     * @param temperature raw reading
+     * @return degrees Celsius
+     */
+    public float calcTemp(int temperature) {
+        // 8 LSB per degree, the zero level is not specified by the datasheet, 21 degrees
+        // is the usual figure
+        return 21.0f + temperature / 8.0f;
+    }
+
+    /**
+     * @return gyroscope full-scale range in degrees per second
+     */
+    public float getGyroRange() {
+        return gRes * 32768.0f;
+    }
+
+    /**
+     * @return accelerometer full-scale range in g
+     */
+    public float getAccelRange() {
+        return aRes * 32768.0f;
+    }
+
+    /**
+     * @return magnetometer full-scale range in gauss
+     */
+    public float getMagRange() {
+        return mRes * 32768.0f;
+    }
+
+    /**
+     * Set the gyroscope full-scale range
+     * @param gScl
+     * @throws IOException
+     */
+    public void setGyroScale(LSM9DS0Constants.gyro_scale gScl) throws IOException {
+        // We need to preserve the other bytes in CTRL_REG4_G. So, first get it
+        // from the shadow copy:
+        int temp = gReadControl(LSM9DS0Constants.CTRL_REG4_G);
         // Then mask out the gyro scale bits:
         temp &= 0xFF^(0x3 << 4);
         // Then shift in our new scale bits:
@@ -327,9 +853,15 @@ public class LSM9DS0 implements Closeable {
         calcgRes();
     }
 
-    private void setAccelScale(LSM9DS0Constants.accel_scale aScl) throws IOException {
-        // We need to preserve the other bytes in CTRL_REG2_XM. So, first read it:
-        int temp = xmReadByte(LSM9DS0Constants.CTRL_REG2_XM);
+    /**
+     * Set the accelerometer full-scale range
+     * @param aScl
+     * @throws IOException
+     */
+    public void setAccelScale(LSM9DS0Constants.accel_scale aScl) throws IOException {
+        // We need to preserve the other bytes in CTRL_REG2_XM. So, first get it
+        // from the shadow copy:
+        int temp = xmReadControl(LSM9DS0Constants.CTRL_REG2_XM);
         // Then mask out the accel scale bits:
         temp &= 0xFF^(0x3 << 3);
         // Then shift in our new scale bits:
@@ -344,9 +876,15 @@ public class LSM9DS0 implements Closeable {
         calcaRes();
     }
 
-    private void setMagScale(LSM9DS0Constants.mag_scale mScl) throws IOException {
-        // We need to preserve the other bytes in CTRL_REG6_XM. So, first read it:
-        int temp = xmReadByte(LSM9DS0Constants.CTRL_REG6_XM);
+    /**
+     * Set the magnetometer full-scale range
+     * @param mScl
+     * @throws IOException
+     */
+    public void setMagScale(LSM9DS0Constants.mag_scale mScl) throws IOException {
+        // We need to preserve the other bytes in CTRL_REG6_XM. So, first get it
+        // from the shadow copy:
+        int temp = xmReadControl(LSM9DS0Constants.CTRL_REG6_XM);
         // Then mask out the mag scale bits:
         temp &= 0xFF^(0x3 << 5);
         // Then shift in our new scale bits:
@@ -361,31 +899,53 @@ public class LSM9DS0 implements Closeable {
         calcmRes();
     }
 
-    private void setGyroODR(LSM9DS0Constants.gyro_odr gRate) throws IOException {
-        // We need to preserve the other bytes in CTRL_REG1_G. So, first read it:
-        int temp = gReadByte(LSM9DS0Constants.CTRL_REG1_G);
+    /**
+     * Set the gyroscope output data rate and bandwidth
+     * @param gRate
+     * @throws IOException
+     */
+    public void setGyroODR(LSM9DS0Constants.gyro_odr gRate) throws IOException {
+        // We need to preserve the other bytes in CTRL_REG1_G. So, first get it
+        // from the shadow copy:
+        int temp = gReadControl(LSM9DS0Constants.CTRL_REG1_G);
         // Then mask out the gyro ODR bits:
         temp &= 0xFF^(0xF << 4);
         // Then shift in our new ODR bits:
-        temp |= (gRate.ordinal() << 4);
+        temp |= (gRate.getValue() << 4);
         // And write the new register value back into CTRL_REG1_G:
         gWriteByte(LSM9DS0Constants.CTRL_REG1_G, (byte)temp);
+
+        this.gRate = gRate;
     }
 
-    private void setAccelODR(LSM9DS0Constants.accel_odr aRate) throws IOException {
-        // We need to preserve the other bytes in CTRL_REG1_XM. So, first read it:
-        int temp = xmReadByte(LSM9DS0Constants.CTRL_REG1_XM);
+    /**
+     * Set the accelerometer output data rate
+     * @param aRate
+     * @throws IOException
+     */
+    public void setAccelODR(LSM9DS0Constants.accel_odr aRate) throws IOException {
+        // We need to preserve the other bytes in CTRL_REG1_XM. So, first get it
+        // from the shadow copy:
+        int temp = xmReadControl(LSM9DS0Constants.CTRL_REG1_XM);
         // Then mask out the accel ODR bits:
         temp &= 0xFF^(0xF << 4);
         // Then shift in our new ODR bits:
         temp |= (aRate.ordinal() << 4);
         // And write the new register value back into CTRL_REG1_XM:
         xmWriteByte(LSM9DS0Constants.CTRL_REG1_XM, (byte)temp);
+
+        this.aRate = aRate;
     }
 
-    private void setAccelABW(LSM9DS0Constants.accel_abw abwRate) throws IOException {
-        // We need to preserve the other bytes in CTRL_REG2_XM. So, first read it:
-        int temp = xmReadByte(LSM9DS0Constants.CTRL_REG2_XM);
+    /**
+     * Set the accelerometer anti-alias filter bandwidth
+     * @param abwRate
+     * @throws IOException
+     */
+    public void setAccelABW(LSM9DS0Constants.accel_abw abwRate) throws IOException {
+        // We need to preserve the other bytes in CTRL_REG2_XM. So, first get it
+        // from the shadow copy:
+        int temp = xmReadControl(LSM9DS0Constants.CTRL_REG2_XM);
         // Then mask out the accel ABW bits:
         temp &= 0xFF^(0x3 << 6);
         // Then shift in our new ODR bits:
@@ -394,15 +954,23 @@ public class LSM9DS0 implements Closeable {
         xmWriteByte(LSM9DS0Constants.CTRL_REG2_XM, (byte)temp);
     }
 
-    private void setMagODR(LSM9DS0Constants.mag_odr mRate) throws IOException {
-        // We need to preserve the other bytes in CTRL_REG5_XM. So, first read it:
-        int temp = xmReadByte(LSM9DS0Constants.CTRL_REG5_XM);
+    /**
+     * Set the magnetometer output data rate
+     * @param mRate
+     * @throws IOException
+     */
+    public void setMagODR(LSM9DS0Constants.mag_odr mRate) throws IOException {
+        // We need to preserve the other bytes in CTRL_REG5_XM. So, first get it
+        // from the shadow copy:
+        int temp = xmReadControl(LSM9DS0Constants.CTRL_REG5_XM);
         // Then mask out the mag ODR bits:
         temp &= 0xFF^(0x7 << 2);
         // Then shift in our new ODR bits:
         temp |= (mRate.ordinal() << 2);
         // And write the new register value back into CTRL_REG5_XM:
         xmWriteByte(LSM9DS0Constants.CTRL_REG5_XM, (byte)temp);
+
+        this.mRate = mRate;
     }
 
     private void calcgRes() {
@@ -421,6 +989,8 @@ public class LSM9DS0 implements Closeable {
                 gRes = 2000.0f / 32768.0f;
                 break;
         }
+        // The calibration in counts depends on the resolution
+        applyCalibration();
     }
 
     private void calcaRes() {
@@ -429,6 +999,7 @@ public class LSM9DS0 implements Closeable {
         // algorithm to calculate g/(ADC tick) based on that 3-bit value:
         aRes = (float) (aScale == LSM9DS0Constants.accel_scale.A_SCALE_16G ? 16.0 / 32768.0 :
                         (((float) aScale.ordinal() + 1.0) * 2.0) / 32768.0);
+        applyCalibration();
     }
 
     private void calcmRes() {
@@ -437,6 +1008,298 @@ public class LSM9DS0 implements Closeable {
         // to calculate Gs/(ADC tick) based on that 2-bit value:
         mRes = (float) (mScale == LSM9DS0Constants.mag_scale.M_SCALE_2GS ? 2.0 / 32768.0 :
                         (float) (mScale.ordinal() << 2) / 32768.0);
+        applyCalibration();
+    }
+
+    /**
+     * Correct every following read of the gyroscope, accelerometer and magnetometer,
+     * including the FIFO drains and the public fields. The coefficients are copied, call
+     * again after changing them.
+     * @param calibration null to go back to raw readings
+     */
+    public void setCalibration(LSM9DS0Calibration calibration) {
+        this.calibration = calibration;
+        applyCalibration();
+    }
+
+    /**
+     * @return the calibration set with {@link #setCalibration(LSM9DS0Calibration)}, or null
+     */
+    public LSM9DS0Calibration getCalibration() {
+        return calibration;
+    }
+
+    /**
+     * Convert the calibration to raw counts at the current resolutions
+     */
+    private void applyCalibration() {
+        calibrated = calibration != null && gRes > 0 && aRes > 0 && mRes > 0;
+        if (!calibrated) {
+            gBias[0] = gBias[1] = gBias[2] = 0;
+            return;
+        }
+        for (int i = 0; i < 3; i++) {
+            gBias[i] = Math.round(calibration.gyroBias[i] / gRes);
+            aOffset[i] = calibration.accelOffset[i] / aRes;
+            aGain[i] = calibration.accelScale[i];
+            mOffset[i] = calibration.magOffset[i] / mRes;
+        }
+        // Counts in and out at the same resolution, so the matrix carries over as is
+        System.arraycopy(calibration.magSoftIron, 0, mMatrix, 0, mMatrix.length);
+    }
+
+    /**
+     * Put the gyroscope in power-down, sleep or normal mode
+     * @param mode
+     * @throws IOException
+     */
+    public void setGyroPowerMode(LSM9DS0Constants.gyro_power mode) throws IOException {
+        // PD and Zen Xen Yen are the low nibble of CTRL_REG1_G, the ODR stays as is
+        int temp = gReadControl(LSM9DS0Constants.CTRL_REG1_G);
+        temp &= 0xFF^0x0F;
+        switch (mode) {
+            case G_SLEEP:
+                temp |= 0x08;
+                break;
+            case G_NORMAL:
+                temp |= 0x0F;
+                break;
+            default:
+                break;
+        }
+        gWriteByte(LSM9DS0Constants.CTRL_REG1_G, (byte)temp);
+    }
+
+    /**
+     * Power the accelerometer down, or back up at the last output data rate set
+     * @param powerDown
+     * @throws IOException
+     */
+    public void setAccelPowerDown(boolean powerDown) throws IOException {
+        int temp = xmReadControl(LSM9DS0Constants.CTRL_REG1_XM);
+        temp &= 0xFF^(0xF << 4);
+        temp |= (powerDown ? 0 : aRate.ordinal()) << 4;
+        xmWriteByte(LSM9DS0Constants.CTRL_REG1_XM, (byte)temp);
+    }
+
+    /**
+     * Power the magnetometer down, or back to continuous conversion
+     * @param powerDown
+     * @throws IOException
+     */
+    public void setMagPowerDown(boolean powerDown) throws IOException {
+        // MD[1:0] of CTRL_REG7_XM, 10 = power-down, 00 = continuous-conversion
+        int temp = xmReadControl(LSM9DS0Constants.CTRL_REG7_XM);
+        temp &= 0xFF^0x03;
+        temp |= powerDown ? 0x02 : 0x00;
+        xmWriteByte(LSM9DS0Constants.CTRL_REG7_XM, (byte)temp);
+    }
+
+    /**
+     * Turn the temperature sensor on or off, it converts at the magnetometer rate
+     * @param enable
+     * @throws IOException
+     */
+    public void setTempEnabled(boolean enable) throws IOException {
+        // TEMP_EN of CTRL_REG5_XM
+        int temp = xmReadControl(LSM9DS0Constants.CTRL_REG5_XM);
+        temp = enable ? (temp | 0x80) : (temp & ~0x80);
+        xmWriteByte(LSM9DS0Constants.CTRL_REG5_XM, (byte)temp);
+    }
+
+    /**
+     * Detect single and/or double clicks on every axis with the accelerometer's click
+     * engine. The input is high pass filtered, so the threshold is independent of gravity.
+     * Route the events to a line with {@link #routeMotionEvents(boolean)}.
+     * @param singleClick
+     * @param doubleClick
+     * @param thresholdG acceleration a click has to exceed
+     * @param timeLimitMs longest a click may stay over the threshold
+     * @param latencyMs quiet time after the first click of a double click
+     * @param windowMs time after the latency for the second click
+     * @throws IOException
+     */
+    public void enableClick(boolean singleClick, boolean doubleClick, float thresholdG,
+                            float timeLimitMs, float latencyMs, float windowMs) throws IOException {
+        xmWriteByte(LSM9DS0Constants.CLICK_THS, (byte) accelThreshold(thresholdG));
+        xmWriteByte(LSM9DS0Constants.TIME_LIMIT, (byte) accelPeriods(timeLimitMs, 0xFF));
+        xmWriteByte(LSM9DS0Constants.TIME_LATENCY, (byte) accelPeriods(latencyMs, 0xFF));
+        xmWriteByte(LSM9DS0Constants.TIME_WINDOW, (byte) accelPeriods(windowMs, 0xFF));
+        // HP_Click of CTRL_REG0_XM
+        int temp = xmReadControl(LSM9DS0Constants.CTRL_REG0_XM);
+        xmWriteByte(LSM9DS0Constants.CTRL_REG0_XM, (byte) (temp | 0x04));
+        // CLICK_CFG: - - ZD ZS YD YS XD XS
+        xmWriteByte(LSM9DS0Constants.CLICK_CFG, (byte) ((singleClick ? 0x15 : 0x00) | (doubleClick ? 0x2A : 0x00)));
+    }
+
+    /**
+     * @throws IOException
+     */
+    public void disableClick() throws IOException {
+        xmWriteByte(LSM9DS0Constants.CLICK_CFG, (byte) 0x00);
+        int temp = xmReadControl(LSM9DS0Constants.CTRL_REG0_XM);
+        xmWriteByte(LSM9DS0Constants.CTRL_REG0_XM, (byte) (temp & ~0x04));
+    }
+
+    /**
+     * Detect free fall with interrupt generator 1, once every axis stays under the
+     * threshold. The request is latched until INT_GEN_1_SRC is read.
+     * @param thresholdG e.g. 0.35
+     * @param durationMs e.g. 30
+     * @throws IOException
+     */
+    public void enableFreeFall(float thresholdG, float durationMs) throws IOException {
+        xmWriteByte(LSM9DS0Constants.INT_GEN_1_THS, (byte) accelThreshold(thresholdG));
+        xmWriteByte(LSM9DS0Constants.INT_GEN_1_DURATION, (byte) accelPeriods(durationMs, 0x7F));
+        // Unfiltered, free fall is the absence of gravity: HPIS1 of CTRL_REG0_XM off
+        int temp = xmReadControl(LSM9DS0Constants.CTRL_REG0_XM);
+        xmWriteByte(LSM9DS0Constants.CTRL_REG0_XM, (byte) (temp & ~0x02));
+        // LIR1 of CTRL_REG5_XM
+        temp = xmReadControl(LSM9DS0Constants.CTRL_REG5_XM);
+        xmWriteByte(LSM9DS0Constants.CTRL_REG5_XM, (byte) (temp | 0x01));
+        // INT_GEN_1_REG: AOI 6D ZHIE ZLIE YHIE YLIE XHIE XLIE, AND of the low events
+        xmWriteByte(LSM9DS0Constants.INT_GEN_1_REG, (byte) 0x95);
+    }
+
+    /**
+     * @throws IOException
+     */
+    public void disableFreeFall() throws IOException {
+        xmWriteByte(LSM9DS0Constants.INT_GEN_1_REG, (byte) 0x00);
+    }
+
+    /**
+     * Detect motion with interrupt generator 2, once any axis goes over the threshold.
+     * The input is high pass filtered so gravity does not count, and the request is
+     * latched until INT_GEN_2_SRC is read.
+     * @param thresholdG e.g. 0.1
+     * @param durationMs how long the motion has to last
+     * @throws IOException
+     */
+    public void enableWakeUp(float thresholdG, float durationMs) throws IOException {
+        xmWriteByte(LSM9DS0Constants.INT_GEN_2_THS, (byte) accelThreshold(thresholdG));
+        xmWriteByte(LSM9DS0Constants.INT_GEN_2_DURATION, (byte) accelPeriods(durationMs, 0x7F));
+        // HPIS2 of CTRL_REG0_XM
+        int temp = xmReadControl(LSM9DS0Constants.CTRL_REG0_XM);
+        xmWriteByte(LSM9DS0Constants.CTRL_REG0_XM, (byte) (temp | 0x01));
+        // LIR2 of CTRL_REG5_XM
+        temp = xmReadControl(LSM9DS0Constants.CTRL_REG5_XM);
+        xmWriteByte(LSM9DS0Constants.CTRL_REG5_XM, (byte) (temp | 0x02));
+        // OR of the high events
+        xmWriteByte(LSM9DS0Constants.INT_GEN_2_REG, (byte) 0x2A);
+    }
+
+    /**
+     * @throws IOException
+     */
+    public void disableWakeUp() throws IOException {
+        xmWriteByte(LSM9DS0Constants.INT_GEN_2_REG, (byte) 0x00);
+        int temp = xmReadControl(LSM9DS0Constants.CTRL_REG0_XM);
+        xmWriteByte(LSM9DS0Constants.CTRL_REG0_XM, (byte) (temp & ~0x01));
+    }
+
+    /**
+     * Signal clicks and both interrupt generators on one XM interrupt line, in place of
+     * the data-ready signal {@link #begin} put there, so an edge on it always means a
+     * motion event. INT2_XM leaves the accelerometer data-ready on INT1_XM.
+     * @param int2 true for INT2_XM, false for INT1_XM
+     * @throws IOException
+     */
+    public void routeMotionEvents(boolean int2) throws IOException {
+        // CTRL_REG3_XM: P1_BOOT P1_TAP P1_INT1 P1_INT2 P1_INTM P1_DRDYA P1_DRDYM P1_EMPTY
+        // CTRL_REG4_XM: P2_TAP P2_INT1 P2_INT2 P2_INTM P2_DRDYA P2_DRDYM P2_Overrun P2_WTM
+        // Only the motion and data-ready bits change, e.g. a FIFO watermark stays routed
+        int int1Routing = xmReadControl(LSM9DS0Constants.CTRL_REG3_XM) & ~(0x70 | 0x04);
+        int int2Routing = xmReadControl(LSM9DS0Constants.CTRL_REG4_XM) & ~(0xE0 | 0x04);
+        xmWriteByte(LSM9DS0Constants.CTRL_REG3_XM, (byte) (int1Routing | (int2 ? 0x04 : 0x70)));
+        xmWriteByte(LSM9DS0Constants.CTRL_REG4_XM, (byte) (int2Routing | (int2 ? 0xE0 : 0x04)));
+    }
+
+    /**
+     * Put both XM interrupt lines back to data-ready only, as after {@link #begin}
+     * @throws IOException
+     */
+    public void unrouteMotionEvents() throws IOException {
+        int int1Routing = xmReadControl(LSM9DS0Constants.CTRL_REG3_XM) & ~0x70;
+        int int2Routing = xmReadControl(LSM9DS0Constants.CTRL_REG4_XM) & ~0xE0;
+        xmWriteByte(LSM9DS0Constants.CTRL_REG3_XM, (byte) (int1Routing | 0x04));
+        xmWriteByte(LSM9DS0Constants.CTRL_REG4_XM, (byte) (int2Routing | 0x04));
+    }
+
+    /**
+     * Click and interrupt generator thresholds are 7 bits of full scale / 128
+     */
+    private int accelThreshold(float g) {
+        int counts = Math.round(g / (getAccelRange() / 128.0f));
+        return Math.max(1, Math.min(0x7F, counts));
+    }
+
+    /**
+     * Click and interrupt generator times count output data periods
+     */
+    private int accelPeriods(float ms, int max) {
+        int periods = Math.round(ms * accelRateHz(aRate) / 1000.0f);
+        return Math.max(0, Math.min(max, periods));
+    }
+
+    /**
+     * Poll a data-ready flag until it is set
+     * @param statusGyro true for STATUS_REG_G, false for an XM status register
+     * @param statusReg
+     * @param timeoutMs
+     * @return true once set, false after the timeout
+     * @throws IOException
+     */
+    private boolean waitForData(boolean statusGyro, int statusReg, long timeoutMs) throws IOException {
+        long deadline = System.nanoTime() + timeoutMs * 1000000L;
+        while (true) {
+            byte status = statusGyro ? gReadByte(statusReg) : xmReadByte(statusReg);
+            if ((status & 0x08) != 0) {
+                return true;
+            }
+            if (System.nanoTime() >= deadline) {
+                return false;
+            }
+            try {
+                Thread.sleep(0, 500000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Wait for the first gyroscope sample after waking it. Read the gyro once before
+     * waking it, so a sample left over from before does not count.
+     * @param timeoutMs
+     * @return true once data is ready, false after the timeout
+     * @throws IOException
+     */
+    public boolean waitForGyroData(long timeoutMs) throws IOException {
+        return waitForData(true, LSM9DS0Constants.STATUS_REG_G, timeoutMs);
+    }
+
+    /**
+     * Wait for the first accelerometer sample after waking it, see
+     * {@link #waitForGyroData(long)}
+     * @param timeoutMs
+     * @return true once data is ready, false after the timeout
+     * @throws IOException
+     */
+    public boolean waitForAccelData(long timeoutMs) throws IOException {
+        return waitForData(false, LSM9DS0Constants.STATUS_REG_A, timeoutMs);
+    }
+
+    /**
+     * Wait for the first magnetometer sample after waking it, see
+     * {@link #waitForGyroData(long)}
+     * @param timeoutMs
+     * @return true once data is ready, false after the timeout
+     * @throws IOException
+     */
+    public boolean waitForMagData(long timeoutMs) throws IOException {
+        return waitForData(false, LSM9DS0Constants.STATUS_REG_M, timeoutMs);
     }
 
     public boolean newXData() throws IOException {
@@ -499,12 +1362,89 @@ public class LSM9DS0 implements Closeable {
         return false;
     }
 
+    /**
+     * In verify mode every register update reads the register back first and counts a
+     * drift when it no longer holds what was last written, e.g. after a brown-out reset.
+     * The update is applied on top of the shadow copy either way.
+     * @param verify
+     */
+    public void setVerifyRegisters(boolean verify) {
+        verifyShadow = verify;
+    }
+
+    /**
+     * @return number of register drifts found since construction
+     */
+    public int getRegisterDrift() {
+        return shadowDrift;
+    }
+
+    /**
+     * Read back every register written so far and rewrite those that drifted
+     * @return number of drifted registers
+     * @throws IOException
+     */
+    public int verifyRegisters() throws IOException {
+        int drifted = 0;
+        for (int subAddress = 0; subAddress < SHADOW_SIZE; subAddress++) {
+            if (gShadowValid[subAddress] && gReadByte(subAddress) != gShadow[subAddress]) {
+                drifted(true, subAddress);
+                gWriteByte(subAddress, gShadow[subAddress]);
+                drifted++;
+            }
+            if (xmShadowValid[subAddress] && xmReadByte(subAddress) != xmShadow[subAddress]) {
+                drifted(false, subAddress);
+                xmWriteByte(subAddress, xmShadow[subAddress]);
+                drifted++;
+            }
+        }
+        return drifted;
+    }
+
+    private void drifted(boolean gyroDevice, int subAddress) {
+        shadowDrift++;
+        Log.w(TAG, String.format("%s register 0x%02X drifted from 0x%02X", gyroDevice ? "Gyro" : "XM",
+                subAddress, (gyroDevice ? gShadow : xmShadow)[subAddress]));
+    }
+
+    /**
+     * Last value written to a gyro register, read over I2C only when it was never
+     * written or in verify mode
+     */
+    private int gReadControl(int subAddress) throws IOException {
+        if (!gShadowValid[subAddress]) {
+            gShadow[subAddress] = gReadByte(subAddress);
+            gShadowValid[subAddress] = true;
+        } else if (verifyShadow && gReadByte(subAddress) != gShadow[subAddress]) {
+            drifted(true, subAddress);
+        }
+        return gShadow[subAddress];
+    }
+
+    /**
+     * Last value written to an accel/mag register, read over I2C only when it was never
+     * written or in verify mode
+     */
+    private int xmReadControl(int subAddress) throws IOException {
+        if (!xmShadowValid[subAddress]) {
+            xmShadow[subAddress] = xmReadByte(subAddress);
+            xmShadowValid[subAddress] = true;
+        } else if (verifyShadow && xmReadByte(subAddress) != xmShadow[subAddress]) {
+            drifted(false, subAddress);
+        }
+        return xmShadow[subAddress];
+    }
+
     private void gWriteByte(int subAddress, byte data) throws IOException {
         gyro.writeRegByte(subAddress, data);
+        gShadow[subAddress] = data;
+        gShadowValid[subAddress] = true;
     }
 
     private void xmWriteByte(int subAddress, byte data) throws IOException {
         xm.writeRegByte(subAddress, data);
+        xmShadow[subAddress] = data;
+        xmShadowValid[subAddress] = true;
     }
 
     private byte gReadByte(int subAddress) throws IOException {
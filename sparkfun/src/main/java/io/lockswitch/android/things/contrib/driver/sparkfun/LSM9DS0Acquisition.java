@@ -0,0 +1,253 @@
+/*
+ * Copyright 2017 Choong Hong Cheng, Lockswitch Sdn Bhd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.lockswitch.android.things.contrib.driver.sparkfun;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reads every LSM9DS0 sensor at a fixed rate on its own high priority thread, into a
+ * {@link LSM9DS0SampleRing} and an optional listener:
+ * <pre>
+ * LSM9DS0Acquisition acquisition = new LSM9DS0Acquisition(lsm9DS0, ring);
+ * acquisition.start(2500); // 400 Hz
+ * ...
+ * Log.i(TAG, acquisition.getJitter().toString());
+ * </pre>
+ * Deadlines are absolute, start + n * period on System.nanoTime(), so a late read does
+ * not push the following ones back. How late each read started is recorded in a
+ * {@link JitterHistogram}. Once a whole period behind, every deadline already passed is
+ * skipped rather than read in a burst, and reading carries on from the next one ahead.
+ */
+public class LSM9DS0Acquisition implements Closeable {
+    private static final String TAG = LSM9DS0Acquisition.class.getSimpleName();
+
+    /**
+     * Receives every sample on the acquisition thread, so it must return quickly
+     */
+    public interface Listener {
+        /**
+         * @param sample only valid during the call
+         * @param sequence of the sample in the ring
+         */
+        void onSample(LSM9DS0Sample sample, long sequence);
+    }
+
+    private final LSM9DS0 lsm9DS0;
+    private final LSM9DS0SampleRing ring;
+    private volatile Listener listener;
+
+    private final JitterHistogram jitter = new JitterHistogram();
+    private volatile long periodNanos;
+    private volatile long startNanos;
+    // 0 while running
+    private volatile long stopNanos;
+    private volatile long samples = 0;
+    private volatile long skipped = 0;
+    private volatile long errors = 0;
+    private volatile long listenerErrors = 0;
+
+    private AcquisitionThread thread;
+
+    /**
+     * @param lsm9DS0 already begun, and only read by this from now on
+     * @param ring receives every sample
+     */
+    public LSM9DS0Acquisition(LSM9DS0 lsm9DS0, LSM9DS0SampleRing ring) {
+        this.lsm9DS0 = lsm9DS0;
+        this.ring = ring;
+    }
+
+    public LSM9DS0SampleRing getRing() {
+        return ring;
+    }
+
+    /**
+     * @param listener called on the acquisition thread after each sample is in the ring,
+     *                 null for none
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Start reading, restarting at the new period if already running. The statistics
+     * start over.
+     * @param periodMicros
+     */
+    public synchronized void start(int periodMicros) {
+        if (periodMicros <= 0) {
+            throw new IllegalArgumentException("Sampling period must be positive: " + periodMicros);
+        }
+        stop();
+        jitter.reset();
+        samples = 0;
+        skipped = 0;
+        errors = 0;
+        listenerErrors = 0;
+        periodNanos = TimeUnit.MICROSECONDS.toNanos(periodMicros);
+        startNanos = System.nanoTime();
+        stopNanos = 0;
+        thread = new AcquisitionThread();
+        thread.start();
+    }
+
+    /**
+     * Stop reading and wait for the thread to finish
+     */
+    public synchronized void stop() {
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return thread != null;
+    }
+
+    /**
+     * @return lateness of each read against its deadline
+     */
+    public JitterHistogram getJitter() {
+        return jitter;
+    }
+
+    /**
+     * @return samples read since started
+     */
+    public long getSampleCount() {
+        return samples;
+    }
+
+    /**
+     * @return deadlines skipped because the thread was a period or more late
+     */
+    public long getSkippedCount() {
+        return skipped;
+    }
+
+    /**
+     * @return reads that failed
+     */
+    public long getErrorCount() {
+        return errors;
+    }
+
+    /**
+     * @return samples the listener threw on, logged and otherwise ignored
+     */
+    public long getListenerErrorCount() {
+        return listenerErrors;
+    }
+
+    /**
+     * @return achieved sampling rate between start and stop, or now while running, to
+     * compare against the configured one
+     */
+    public double getActualRateHz() {
+        long end = stopNanos;
+        long elapsed = (end != 0 ? end : System.nanoTime()) - startNanos;
+        return elapsed <= 0 ? 0.0 : samples * 1e9 / elapsed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        stop();
+    }
+
+    private class AcquisitionThread extends Thread {
+        AcquisitionThread() {
+            super(TAG);
+            setPriority(MAX_PRIORITY);
+        }
+
+        @Override
+        public void run() {
+            try {
+                // Thread priorities only map to a narrow nice range on Android
+                Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Unable to raise the acquisition thread priority", e);
+            }
+
+            LSM9DS0Sample sample = new LSM9DS0Sample();
+            long period = periodNanos;
+            long start = System.nanoTime();
+            startNanos = start;
+            try {
+                acquire(sample, period, start);
+            } finally {
+                stopNanos = System.nanoTime();
+            }
+        }
+
+        private void acquire(LSM9DS0Sample sample, long period, long start) {
+            long n = 0;
+            while (!isInterrupted()) {
+                long deadline = start + n * period;
+                long now = System.nanoTime();
+                while (now < deadline) {
+                    LockSupport.parkNanos(deadline - now);
+                    if (isInterrupted()) {
+                        return;
+                    }
+                    now = System.nanoTime();
+                }
+                jitter.record(now - deadline);
+
+                try {
+                    lsm9DS0.readSample(sample);
+                    long sequence = ring.put(sample);
+                    samples++;
+                    Listener current = listener;
+                    if (current != null) {
+                        try {
+                            current.onSample(sample, sequence);
+                        } catch (RuntimeException e) {
+                            // Keep sampling, a listener bug must not silently stop the thread
+                            listenerErrors++;
+                            Log.w(TAG, "Listener failed", e);
+                        }
+                    }
+                } catch (IOException e) {
+                    errors++;
+                    Log.w(TAG, "Unable to read sample", e);
+                }
+
+                n++;
+                // A period or more behind: deadlines n to n + behind have all passed, so carry
+                // on from the next one still ahead rather than timing a read against the past
+                long behind = (System.nanoTime() - start) / period - n;
+                if (behind > 0) {
+                    n += behind + 1;
+                    skipped += behind + 1;
+                }
+            }
+        }
+    }
+}
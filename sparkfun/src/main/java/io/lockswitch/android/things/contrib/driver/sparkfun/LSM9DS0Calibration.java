@@ -0,0 +1,127 @@
+/*
+ * Copyright 2017 Choong Hong Cheng, Lockswitch Sdn Bhd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.lockswitch.android.things.contrib.driver.sparkfun;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * LSM9DS0 corrections in physical units, so they hold across full-scale changes. Applied
+ * to every read once passed to {@link LSM9DS0#setCalibration(LSM9DS0Calibration)}:
+ * <pre>
+ * gyro  = raw - gyroBias
+ * accel = (raw - accelOffset) * accelScale
+ * mag   = magSoftIron * (raw - magOffset)
+ * </pre>
+ * Estimated with {@link LSM9DS0Calibrator} and stored as 92 bytes with
+ * {@link #save(File)}.
+ */
+public class LSM9DS0Calibration {
+    private static final int MAGIC = 0x4C534D30; // "LSM0"
+    private static final int VERSION = 1;
+
+    public final float[] gyroBias = new float[3]; // degrees per second
+    public final float[] accelOffset = new float[3]; // g
+    public final float[] accelScale = { 1.0f, 1.0f, 1.0f };
+    public final float[] magOffset = new float[3]; // gauss, hard iron
+    public final float[] magSoftIron = { // row major
+            1.0f, 0.0f, 0.0f,
+            0.0f, 1.0f, 0.0f,
+            0.0f, 0.0f, 1.0f
+    };
+
+    /**
+     * Write to a file, replacing it
+     * @param file
+     * @throws IOException
+     */
+    public void save(File file) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            write(out);
+        }
+    }
+
+    /**
+     * Read a file written by {@link #save(File)}
+     * @param file
+     * @return calibration
+     * @throws IOException when the file is not a calibration or is truncated
+     */
+    public static LSM9DS0Calibration load(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return read(in);
+        }
+    }
+
+    /**
+     * Magic, version and the 21 coefficients as big endian floats
+     * @param stream left open
+     * @throws IOException
+     */
+    public void write(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        writeFloats(out, gyroBias);
+        writeFloats(out, accelOffset);
+        writeFloats(out, accelScale);
+        writeFloats(out, magOffset);
+        writeFloats(out, magSoftIron);
+        out.flush();
+    }
+
+    /**
+     * @param stream left open
+     * @return calibration
+     * @throws IOException when the stream does not hold a calibration or is truncated
+     */
+    public static LSM9DS0Calibration read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a LSM9DS0 calibration");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported LSM9DS0 calibration version " + version);
+        }
+        LSM9DS0Calibration calibration = new LSM9DS0Calibration();
+        readFloats(in, calibration.gyroBias);
+        readFloats(in, calibration.accelOffset);
+        readFloats(in, calibration.accelScale);
+        readFloats(in, calibration.magOffset);
+        readFloats(in, calibration.magSoftIron);
+        return calibration;
+    }
+
+    private static void writeFloats(DataOutputStream out, float[] values) throws IOException {
+        for (float value : values) {
+            out.writeFloat(value);
+        }
+    }
+
+    private static void readFloats(DataInputStream in, float[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readFloat();
+        }
+    }
+}
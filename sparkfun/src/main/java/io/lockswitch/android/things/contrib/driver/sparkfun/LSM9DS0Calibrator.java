@@ -0,0 +1,181 @@
+/*
+ * Copyright 2017 Choong Hong Cheng, Lockswitch Sdn Bhd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.lockswitch.android.things.contrib.driver.sparkfun;
+
+/**
+ * Estimates a {@link LSM9DS0Calibration} from uncalibrated samples, read after
+ * {@link LSM9DS0#setCalibration(LSM9DS0Calibration)} with null:
+ * <ul>
+ * <li>gyroscope bias, the mean of samples taken at rest</li>
+ * <li>accelerometer offset and scale, from the extremes seen while each axis is turned
+ * straight up and straight down</li>
+ * <li>magnetometer hard iron offset and soft iron scale, from the extremes seen while the
+ * board is turned through every orientation. Only the diagonal of the soft iron matrix
+ * is estimated, which covers the axis-aligned distortion from nearby parts.</li>
+ * </ul>
+ */
+public class LSM9DS0Calibrator {
+    // Exponential smoothing of the accelerometer and magnetometer, so noise does not push
+    // the extremes out
+    private static final float SMOOTHING = 0.25f;
+    // Each axis has to have seen most of +1 g to -1 g
+    private static final float MIN_ACCEL_SPAN = 1.5f;
+    // The Earth's field is 0.25 to 0.65 gauss, so a full turn spans at least 0.5 gauss
+    private static final float MIN_MAG_SPAN = 0.4f;
+
+    private final LSM9DS0 lsm9DS0;
+
+    private final double[] gyroSum = new double[3];
+    private int gyroCount;
+
+    private final float[] accel = new float[3];
+    private final float[] accelMin = new float[3];
+    private final float[] accelMax = new float[3];
+    private int accelCount;
+
+    private final float[] mag = new float[3];
+    private final float[] magMin = new float[3];
+    private final float[] magMax = new float[3];
+    private int magCount;
+
+    /**
+     * @param lsm9DS0 converts the raw readings with its current scales
+     */
+    public LSM9DS0Calibrator(LSM9DS0 lsm9DS0) {
+        this.lsm9DS0 = lsm9DS0;
+    }
+
+    /**
+     * Forget every sample added so far
+     */
+    public void reset() {
+        gyroSum[0] = gyroSum[1] = gyroSum[2] = 0.0;
+        gyroCount = 0;
+        accelCount = 0;
+        magCount = 0;
+    }
+
+    /**
+     * @param sample gx, gy and gz, with the board at rest
+     */
+    public void addGyro(LSM9DS0Sample sample) {
+        gyroSum[0] += lsm9DS0.calcGyro(sample.gx);
+        gyroSum[1] += lsm9DS0.calcGyro(sample.gy);
+        gyroSum[2] += lsm9DS0.calcGyro(sample.gz);
+        gyroCount++;
+    }
+
+    /**
+     * @param sample ax, ay and az, while the board is slowly turned
+     */
+    public void addAccel(LSM9DS0Sample sample) {
+        track(accel, accelMin, accelMax, accelCount++,
+                lsm9DS0.calcAccel(sample.ax), lsm9DS0.calcAccel(sample.ay), lsm9DS0.calcAccel(sample.az));
+    }
+
+    /**
+     * @param sample mx, my and mz, while the board is slowly turned
+     */
+    public void addMag(LSM9DS0Sample sample) {
+        track(mag, magMin, magMax, magCount++,
+                lsm9DS0.calcMag(sample.mx), lsm9DS0.calcMag(sample.my), lsm9DS0.calcMag(sample.mz));
+    }
+
+    private static void track(float[] value, float[] min, float[] max, int count, float x, float y, float z) {
+        if (count == 0) {
+            value[0] = x;
+            value[1] = y;
+            value[2] = z;
+        } else {
+            value[0] += SMOOTHING * (x - value[0]);
+            value[1] += SMOOTHING * (y - value[1]);
+            value[2] += SMOOTHING * (z - value[2]);
+        }
+        for (int i = 0; i < 3; i++) {
+            if (count == 0 || value[i] < min[i]) {
+                min[i] = value[i];
+            }
+            if (count == 0 || value[i] > max[i]) {
+                max[i] = value[i];
+            }
+        }
+    }
+
+    /**
+     * @return whether every accelerometer axis has been turned up and down
+     */
+    public boolean isAccelCovered() {
+        return accelCount > 0 && minSpan(accelMin, accelMax) >= MIN_ACCEL_SPAN;
+    }
+
+    /**
+     * @return whether the board has been turned enough to estimate the magnetometer
+     */
+    public boolean isMagCovered() {
+        return magCount > 0 && minSpan(magMin, magMax) >= MIN_MAG_SPAN;
+    }
+
+    private static float minSpan(float[] min, float[] max) {
+        return Math.min(max[0] - min[0], Math.min(max[1] - min[1], max[2] - min[2]));
+    }
+
+    /**
+     * @param previous source of the corrections without enough samples yet, e.g. to only
+     *                 redo the gyroscope bias, may be null
+     * @return a new calibration
+     */
+    public LSM9DS0Calibration getCalibration(LSM9DS0Calibration previous) {
+        LSM9DS0Calibration calibration = new LSM9DS0Calibration();
+        if (previous != null) {
+            System.arraycopy(previous.gyroBias, 0, calibration.gyroBias, 0, 3);
+            System.arraycopy(previous.accelOffset, 0, calibration.accelOffset, 0, 3);
+            System.arraycopy(previous.accelScale, 0, calibration.accelScale, 0, 3);
+            System.arraycopy(previous.magOffset, 0, calibration.magOffset, 0, 3);
+            System.arraycopy(previous.magSoftIron, 0, calibration.magSoftIron, 0, 9);
+        }
+
+        if (gyroCount > 0) {
+            for (int i = 0; i < 3; i++) {
+                calibration.gyroBias[i] = (float) (gyroSum[i] / gyroCount);
+            }
+        }
+
+        if (isAccelCovered()) {
+            for (int i = 0; i < 3; i++) {
+                calibration.accelOffset[i] = (accelMax[i] + accelMin[i]) / 2.0f;
+                calibration.accelScale[i] = 2.0f / (accelMax[i] - accelMin[i]);
+            }
+        }
+
+        if (isMagCovered()) {
+            // Scale each axis to the mean radius, so the ellipsoid becomes a sphere of the
+            // same field strength
+            float meanRadius = 0.0f;
+            for (int i = 0; i < 3; i++) {
+                meanRadius += (magMax[i] - magMin[i]) / 6.0f;
+            }
+            for (int i = 0; i < 9; i++) {
+                calibration.magSoftIron[i] = 0.0f;
+            }
+            for (int i = 0; i < 3; i++) {
+                calibration.magOffset[i] = (magMax[i] + magMin[i]) / 2.0f;
+                calibration.magSoftIron[i * 4] = meanRadius / ((magMax[i] - magMin[i]) / 2.0f);
+            }
+        }
+        return calibration;
+    }
+}
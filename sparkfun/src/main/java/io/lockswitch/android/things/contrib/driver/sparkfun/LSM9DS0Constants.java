@@ -203,4 +203,33 @@ public interface LSM9DS0Constants {
         M_ODR_50,	// 50 (0x04)
         M_ODR_100,	// 100 Hz (0x05)
     }
+
+    // gyro_power defines the power modes of the gyro, set through PD and the axis enables
+    // of CTRL_REG1_G:
+    public enum gyro_power
+    {
+        G_POWER_DOWN,	// PD = 0, lowest current, slowest to wake
+        G_SLEEP,		// PD = 1, axes off, faster to wake
+        G_NORMAL		// PD = 1, all axes on
+    }
+
+    // fifo_mode defines the FM[2:0] bits of FIFO_CTRL_REG_G and FIFO_CTRL_REG:
+    public enum fifo_mode
+    {
+        FIFO_BYPASS           (0x0), // FIFO off, output registers only
+        FIFO_FIFO             (0x1), // Fill up to 32 samples, then stop
+        FIFO_STREAM           (0x2), // Keep the newest 32 samples
+        FIFO_STREAM_TO_FIFO   (0x3), // Stream until an interrupt, then FIFO
+        FIFO_BYPASS_TO_STREAM (0x4); // Bypass until an interrupt, then stream
+
+        private final int value;
+
+        fifo_mode(int value) {
+            this.value = value;
+        }
+
+        public int getValue() {
+            return value;
+        }
+    }
 }
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2017 Choong Hong Cheng, Lockswitch Sdn Bhd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.lockswitch.android.things.contrib.driver.sparkfun;
+
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Delivers LSM9DS0 readings once the sensor flags new data, either from the data-ready
+ * lines routed by {@link LSM9DS0#begin} (DRDY_G, INT1_XM and INT2_XM) or by polling the
+ * status registers. With the lines the bus is only touched when there is data:
+ * <pre>
+ * LSM9DS0DataReady dataReady = new LSM9DS0DataReady(lsm9DS0, listener);
+ * dataReady.attach(PioInputPin.open(drdyG), PioInputPin.open(int1Xm), PioInputPin.open(int2Xm));
+ * </pre>
+ */
+public class LSM9DS0DataReady implements Closeable {
+    private static final String TAG = LSM9DS0DataReady.class.getSimpleName();
+
+    public static final int GYRO = 1;
+    public static final int ACCEL = 2;
+    public static final int MAG = 4;
+
+    public interface Listener {
+        /**
+         * New data was read
+         * @param sensor GYRO, ACCEL or MAG
+         * @param sample reused for every delivery, only the fields of the sensor are
+         *               updated, copy it to keep it
+         */
+        void onDataReady(int sensor, LSM9DS0Sample sample);
+    }
+
+    private final LSM9DS0 mLsm9DS0;
+    private final Listener mListener;
+    private final LSM9DS0Sample mSample = new LSM9DS0Sample();
+
+    private InputPin mGyroPin;
+    private InputPin mAccelPin;
+    private InputPin mMagPin;
+
+    private final InputPin.OnEdgeListener mEdgeListener = new InputPin.OnEdgeListener() {
+        @Override
+        public void onEdge(InputPin pin) {
+            try {
+                read(pin == mGyroPin ? GYRO : pin == mAccelPin ? ACCEL : MAG);
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to read LSM9DS0", e);
+            }
+        }
+    };
+
+    public LSM9DS0DataReady(LSM9DS0 lsm9DS0, Listener listener) {
+        mLsm9DS0 = lsm9DS0;
+        mListener = listener;
+    }
+
+    /**
+     * Read on the rising edges of the data-ready lines. The pins are closed with this.
+     * @param gyroPin DRDY_G, null to skip the gyroscope
+     * @param accelPin INT1_XM, null to skip the accelerometer
+     * @param magPin INT2_XM, null to skip the magnetometer
+     * @throws IOException
+     */
+    public void attach(InputPin gyroPin, InputPin accelPin, InputPin magPin) throws IOException {
+        mGyroPin = gyroPin;
+        mAccelPin = accelPin;
+        mMagPin = magPin;
+
+        int pending = 0;
+        if (gyroPin != null) {
+            gyroPin.setOnEdgeListener(mEdgeListener);
+            pending |= gyroPin.getValue() ? GYRO : 0;
+        }
+        if (accelPin != null) {
+            accelPin.setOnEdgeListener(mEdgeListener);
+            pending |= accelPin.getValue() ? ACCEL : 0;
+        }
+        if (magPin != null) {
+            magPin.setOnEdgeListener(mEdgeListener);
+            pending |= magPin.getValue() ? MAG : 0;
+        }
+
+        // The lines stay high until the data is read, so one already high would never
+        // see another edge
+        read(pending);
+    }
+
+    /**
+     * Without the data-ready lines, check the status registers and read whatever is new.
+     * Every check costs an I2C transaction per sensor, data or not.
+     * @return the sensors read, a combination of GYRO, ACCEL and MAG
+     * @throws IOException
+     */
+    public int poll() throws IOException {
+        int ready = 0;
+        if (mLsm9DS0.newGData()) {
+            ready |= GYRO;
+        }
+        if (mLsm9DS0.newXData()) {
+            ready |= ACCEL;
+        }
+        if (mLsm9DS0.newMData()) {
+            ready |= MAG;
+        }
+        read(ready);
+        return ready;
+    }
+
+    private synchronized void read(int sensors) throws IOException {
+        if ((sensors & GYRO) != 0) {
+            mLsm9DS0.readGyro(mSample);
+            mListener.onDataReady(GYRO, mSample);
+        }
+        if ((sensors & ACCEL) != 0) {
+            mLsm9DS0.readAccel(mSample);
+            mListener.onDataReady(ACCEL, mSample);
+        }
+        if ((sensors & MAG) != 0) {
+            mLsm9DS0.readMag(mSample);
+            mListener.onDataReady(MAG, mSample);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        mGyroPin = closePin(mGyroPin);
+        mAccelPin = closePin(mAccelPin);
+        mMagPin = closePin(mMagPin);
+    }
+
+    private static InputPin closePin(InputPin pin) {
+        if (pin != null) {
+            try {
+                pin.setOnEdgeListener(null);
+                pin.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to close GPIO", e);
+            }
+        }
+        return null;
+    }
+}
@@ -39,25 +39,71 @@ public class LSM9DS0Driver implements Closeable {
     // documented at https://source.android.com/devices/sensors/hal-interface.html#sensor_t
     private static final String DRIVER_VENDOR = "Sparkfun";
     private static final String DRIVER_NAME = "LSM9DS0";
-    //private static final int DRIVER_MIN_DELAY_US = Math.round(1000000.f / Bmx280.MAX_FREQ_HZ);
-    //private static final int DRIVER_MAX_DELAY_US = Math.round(1000000.f / Bmx280.MIN_FREQ_HZ);
 
-    // TODO : Need to figure out the correct value for this
-    private static final float DRIVER_MAX_RANGE = 4 * SensorManager.GRAVITY_EARTH;
-    private static final int DRIVER_MIN_DELAY_US = 0;
-    private static final int DRIVER_MAX_DELAY_US = 10;
+    // Sampling period of the constructors without one, 50 Hz
+    private static final int DEFAULT_SAMPLING_PERIOD_US = 20000;
 
     private static final int DRIVER_VERSION = 1;
     private static final String DRIVER_REQUIRED_PERMISSION = "";
 
+    // -40 to 85 degrees operating range
+    private static final float TEMPERATURE_MAX_RANGE = 85.0f;
+    private static final float TEMPERATURE_RESOLUTION = 1.0f / 8.0f;
+
+    private static final float GAUSS_TO_MICROTESLA = 100.0f;
+
+    // Unit quaternion components
+    private static final float ROTATION_MAX_RANGE = 1.0f;
+    private static final float ROTATION_RESOLUTION = 1.0f / 32768.0f;
+
     private LSM9DS0 lsm9DS0;
-    private UserSensor userSensor;
+    private LSM9DS0ReadScheduler scheduler;
+    private final LSM9DS0Fusion fusion = new LSM9DS0Fusion();
+    private UserSensor accelSensor;
+    private UserSensor gyroSensor;
+    private UserSensor magSensor;
+    private UserSensor tempSensor;
+    private UserSensor rotationSensor;
+    private UserSensor gameRotationSensor;
 
     public LSM9DS0Driver() throws IOException {
         // https://github.com/androidthings/contrib-drivers/blob/master/mma7660fc/src/main/java/com/google/android/things/contrib/driver/mma7660fc/Mma7660FcAccelerometerDriver.java
         // https://github.com/androidthings/contrib-drivers/blob/master/bmx280/src/main/java/com/google/android/things/contrib/driver/bmx280/Bmx280SensorDriver.java
 
-        lsm9DS0 = new LSM9DS0(0x6B, 0x1D);
+        this(DEFAULT_SAMPLING_PERIOD_US);
+    }
+
+    /**
+     * @param samplingPeriodUs fastest period the sensors will be read at, each one is set
+     *                         to the slowest output data rate keeping up with it
+     * @throws IOException
+     */
+    public LSM9DS0Driver(int samplingPeriodUs) throws IOException {
+        this(new LSM9DS0(0x6B, 0x1D), samplingPeriodUs);
+    }
+
+    /**
+     * Driver for an already opened LSM9DS0, e.g. one on a {@link FakeLSM9DS0}
+     * @param lsm9DS0
+     * @throws IOException
+     */
+    public LSM9DS0Driver(LSM9DS0 lsm9DS0) throws IOException {
+        this(lsm9DS0, DEFAULT_SAMPLING_PERIOD_US);
+    }
+
+    /**
+     * Driver for an already opened LSM9DS0, e.g. one on a {@link FakeLSM9DS0}
+     * @param lsm9DS0
+     * @param samplingPeriodUs fastest period the sensors will be read at, each one is set
+     *                         to the slowest output data rate keeping up with it
+     * @throws IOException
+     */
+    public LSM9DS0Driver(LSM9DS0 lsm9DS0, int samplingPeriodUs) throws IOException {
+        if (samplingPeriodUs <= 0) {
+            throw new IllegalArgumentException("Sampling period must be positive: " + samplingPeriodUs);
+        }
+        this.lsm9DS0 = lsm9DS0;
+        float rateHz = 1000000.0f / samplingPeriodUs;
 
         // begin() -- Initialize the gyro, accelerometer, and magnetometer.
         // This will set up the scale and output rate of each sensor. It'll also
@@ -72,12 +118,55 @@ public class LSM9DS0Driver implements Closeable {
         // Output: The function will return an unsigned 16-bit value. The most-sig
         //		bytes of the output are the WHO_AM_I reading of the accel. The
         //		least significant two bytes are the WHO_AM_I reading of the gyro.
-        // All parameters have a defaulted value, so you can call just "begin()".
-        // Default values are FSR's of:  245DPS, 2g, 2Gs; ODRs of 95 Hz for
-        // gyro, 100 Hz for accelerometer, 100 Hz for magnetometer.
+        // FSR's are 245DPS, 2g, 2Gs, the ODRs follow the sampling period.
         // Use the return value of this function to verify communication.
         lsm9DS0.begin(LSM9DS0Constants.gyro_scale.G_SCALE_245DPS, LSM9DS0Constants.accel_scale.A_SCALE_2G, LSM9DS0Constants.mag_scale.M_SCALE_2GS,
-                LSM9DS0Constants.gyro_odr.G_ODR_95_BW_25, LSM9DS0Constants.accel_odr.A_ODR_25, LSM9DS0Constants.mag_odr.M_ODR_50);
+                LSM9DS0.nearestGyroODR(rateHz), LSM9DS0.nearestAccelODR(rateHz), LSM9DS0.nearestMagODR(rateHz));
+
+        // Nothing converts until the framework enables a sensor
+        scheduler = new LSM9DS0ReadScheduler(lsm9DS0);
+        scheduler.standby();
+    }
+
+    /**
+     * @param standby power mode of the gyroscope while disabled, G_SLEEP (the default)
+     *                wakes faster, G_POWER_DOWN draws less
+     * @throws IOException
+     */
+    public void setGyroStandby(LSM9DS0Constants.gyro_power standby) throws IOException {
+        scheduler.setGyroStandby(standby);
+    }
+
+    /**
+     * Measure how long each sensor takes to produce its first sample when enabled, see
+     * {@link #getWakeUpMicros}. This polls the chip and blocks the framework's enable call
+     * for up to a second, so leave it off outside of tuning.
+     * @param measure
+     */
+    public void setMeasureWakeUp(boolean measure) {
+        scheduler.setMeasureWakeUp(measure);
+    }
+
+    /**
+     * Time the last measured enable of a sensor took from the power mode write to its
+     * first sample, to decide whether disabling it between uses is worth it
+     * @param sensorType Sensor.TYPE_ACCELEROMETER, TYPE_GYROSCOPE, TYPE_MAGNETIC_FIELD
+     *                   or TYPE_AMBIENT_TEMPERATURE
+     * @return microseconds, 0 when not measured and -1 when the sensor never came up
+     */
+    public long getWakeUpMicros(int sensorType) {
+        switch (sensorType) {
+            case Sensor.TYPE_GYROSCOPE:
+                return scheduler.getWakeUpMicros(LSM9DS0ReadScheduler.GYRO);
+            case Sensor.TYPE_ACCELEROMETER:
+                return scheduler.getWakeUpMicros(LSM9DS0ReadScheduler.ACCEL);
+            case Sensor.TYPE_MAGNETIC_FIELD:
+                return scheduler.getWakeUpMicros(LSM9DS0ReadScheduler.MAG);
+            case Sensor.TYPE_AMBIENT_TEMPERATURE:
+                return scheduler.getWakeUpMicros(LSM9DS0ReadScheduler.TEMP);
+            default:
+                throw new IllegalArgumentException("Not a LSM9DS0 sensor type " + sensorType);
+        }
     }
 
     @Override
@@ -93,16 +182,34 @@ public class LSM9DS0Driver implements Closeable {
     }
 
     /**
-     * Register the driver in the framework.
+     * @return the fusion engine behind the rotation vector sensors, e.g. to tune its gain
+     */
+    public LSM9DS0Fusion getFusion() {
+        return fusion;
+    }
+
+    /**
+     * Register the accelerometer, gyroscope, magnetic field, temperature, rotation vector
+     * and game rotation vector sensors in the framework.
      * @see #unregister()
      */
     public void register() {
         if (lsm9DS0 == null) {
             throw new IllegalStateException("cannot registered closed driver");
         }
-        if (userSensor == null) {
-            userSensor = build(lsm9DS0);
-            UserDriverManager.getManager().registerSensor(userSensor);
+        if (accelSensor == null) {
+            accelSensor = build(scheduler, fusion, LSM9DS0ReadScheduler.ACCEL);
+            gyroSensor = build(scheduler, fusion, LSM9DS0ReadScheduler.GYRO);
+            magSensor = build(scheduler, fusion, LSM9DS0ReadScheduler.MAG);
+            tempSensor = build(scheduler, fusion, LSM9DS0ReadScheduler.TEMP);
+            rotationSensor = build(scheduler, fusion, LSM9DS0ReadScheduler.ROTATION);
+            gameRotationSensor = build(scheduler, fusion, LSM9DS0ReadScheduler.GAME_ROTATION);
+            UserDriverManager.getManager().registerSensor(accelSensor);
+            UserDriverManager.getManager().registerSensor(gyroSensor);
+            UserDriverManager.getManager().registerSensor(magSensor);
+            UserDriverManager.getManager().registerSensor(tempSensor);
+            UserDriverManager.getManager().registerSensor(rotationSensor);
+            UserDriverManager.getManager().registerSensor(gameRotationSensor);
         }
     }
 
@@ -110,50 +217,168 @@ public class LSM9DS0Driver implements Closeable {
      * Unregister the driver from the framework.
      */
     public void unregister() {
-        if  ( userSensor != null ) {
-            UserDriverManager.getManager().unregisterSensor(userSensor);
-            userSensor = null;
+        if  ( accelSensor != null ) {
+            UserDriverManager.getManager().unregisterSensor(accelSensor);
+            UserDriverManager.getManager().unregisterSensor(gyroSensor);
+            UserDriverManager.getManager().unregisterSensor(magSensor);
+            UserDriverManager.getManager().unregisterSensor(tempSensor);
+            UserDriverManager.getManager().unregisterSensor(rotationSensor);
+            UserDriverManager.getManager().unregisterSensor(gameRotationSensor);
+            accelSensor = null;
+            gyroSensor = null;
+            magSensor = null;
+            tempSensor = null;
+            rotationSensor = null;
+            gameRotationSensor = null;
         }
     }
 
-    static UserSensor build(final LSM9DS0 lsm9DS0) {
+    static UserSensor build(final LSM9DS0ReadScheduler scheduler, final LSM9DS0Fusion fusion, final int sensor) {
+        final LSM9DS0 lsm9DS0 = scheduler.getLsm9DS0();
+        // Reused for every read, UserSensorReading itself is the only per-read allocation
+        // left and is required by the framework
+        final LSM9DS0Sample lsm9DS0Sample = new LSM9DS0Sample();
+        final boolean fused = sensor == LSM9DS0ReadScheduler.ROTATION || sensor == LSM9DS0ReadScheduler.GAME_ROTATION;
+        final float[] sample = new float[sensor == LSM9DS0ReadScheduler.TEMP ? 1 : fused ? 4 : 3];
+
+        // The framework never asks faster than the configured output data rate, reads in
+        // between would only return the same data. Slower is fine down to the slowest rate.
+        int type;
+        String name;
+        float maxRange;
+        float resolution;
+        float fastestHz;
+        float slowestHz;
+        switch (sensor) {
+            case LSM9DS0ReadScheduler.GYRO:
+                type = Sensor.TYPE_GYROSCOPE;
+                name = DRIVER_NAME + " Gyroscope";
+                maxRange = (float) Math.toRadians(lsm9DS0.getGyroRange());
+                resolution = (float) Math.toRadians(lsm9DS0.calcGyro(1));
+                fastestHz = LSM9DS0.gyroRateHz(lsm9DS0.getGyroODR());
+                slowestHz = LSM9DS0.gyroRateHz(LSM9DS0Constants.gyro_odr.G_ODR_95_BW_125);
+                break;
+            case LSM9DS0ReadScheduler.ACCEL:
+                type = Sensor.TYPE_ACCELEROMETER;
+                name = DRIVER_NAME + " Accelerometer";
+                maxRange = lsm9DS0.getAccelRange() * SensorManager.GRAVITY_EARTH;
+                resolution = lsm9DS0.calcAccel(1) * SensorManager.GRAVITY_EARTH;
+                fastestHz = LSM9DS0.accelRateHz(lsm9DS0.getAccelODR());
+                slowestHz = LSM9DS0.accelRateHz(LSM9DS0Constants.accel_odr.A_ODR_3125);
+                break;
+            case LSM9DS0ReadScheduler.MAG:
+                type = Sensor.TYPE_MAGNETIC_FIELD;
+                name = DRIVER_NAME + " Magnetometer";
+                maxRange = lsm9DS0.getMagRange() * GAUSS_TO_MICROTESLA;
+                resolution = lsm9DS0.calcMag(1) * GAUSS_TO_MICROTESLA;
+                fastestHz = LSM9DS0.magRateHz(lsm9DS0.getMagODR());
+                slowestHz = LSM9DS0.magRateHz(LSM9DS0Constants.mag_odr.M_ODR_3125);
+                break;
+            case LSM9DS0ReadScheduler.ROTATION:
+            case LSM9DS0ReadScheduler.GAME_ROTATION:
+                // Updated with every new gyroscope sample
+                type = sensor == LSM9DS0ReadScheduler.ROTATION
+                        ? Sensor.TYPE_ROTATION_VECTOR : Sensor.TYPE_GAME_ROTATION_VECTOR;
+                name = DRIVER_NAME + (sensor == LSM9DS0ReadScheduler.ROTATION
+                        ? " Rotation Vector" : " Game Rotation Vector");
+                maxRange = ROTATION_MAX_RANGE;
+                resolution = ROTATION_RESOLUTION;
+                fastestHz = LSM9DS0.gyroRateHz(lsm9DS0.getGyroODR());
+                slowestHz = LSM9DS0.gyroRateHz(LSM9DS0Constants.gyro_odr.G_ODR_95_BW_125);
+                break;
+            default:
+                // Converted along with the magnetometer
+                type = Sensor.TYPE_AMBIENT_TEMPERATURE;
+                name = DRIVER_NAME + " Temperature";
+                maxRange = TEMPERATURE_MAX_RANGE;
+                resolution = TEMPERATURE_RESOLUTION;
+                fastestHz = LSM9DS0.magRateHz(lsm9DS0.getMagODR());
+                slowestHz = LSM9DS0.magRateHz(LSM9DS0Constants.mag_odr.M_ODR_3125);
+                break;
+        }
+
         return UserSensor.builder()
-                .setType(Sensor.TYPE_ACCELEROMETER)
-                .setName(DRIVER_NAME)
+                .setType(type)
+                .setName(name)
                 .setVendor(DRIVER_VENDOR)
                 .setVersion(DRIVER_VERSION)
                 .setRequiredPermission(DRIVER_REQUIRED_PERMISSION)
 
-                .setMaxRange(DRIVER_MAX_RANGE)
-                .setMinDelay(DRIVER_MIN_DELAY_US)
-                .setMaxDelay(DRIVER_MAX_DELAY_US)
+                .setMaxRange(maxRange)
+                .setResolution(resolution)
+                .setMinDelay((int) Math.ceil(1000000.0f / fastestHz))
+                .setMaxDelay((int) Math.ceil(1000000.0f / slowestHz))
 
                 .setUuid(UUID.randomUUID())
                 .setDriver(new UserSensorDriver() {
                     @Override
                     public UserSensorReading read() throws IOException {
-                        lsm9DS0.readAccel();
-                        lsm9DS0.readMag();
-                        lsm9DS0.readMag();
-                        lsm9DS0.readTemp();
+                        if (fused) {
+                            long gyroNanos = scheduler.read(LSM9DS0ReadScheduler.GYRO, lsm9DS0Sample);
+                            scheduler.read(LSM9DS0ReadScheduler.ACCEL, lsm9DS0Sample);
+                            if (sensor == LSM9DS0ReadScheduler.ROTATION) {
+                                scheduler.read(LSM9DS0ReadScheduler.MAG, lsm9DS0Sample);
+                            }
+                            fusion.update(lsm9DS0, lsm9DS0Sample, gyroNanos);
+                            if (sensor == LSM9DS0ReadScheduler.ROTATION) {
+                                fusion.getRotationVector(sample);
+                            } else {
+                                fusion.getGameRotationVector(sample);
+                            }
+                        } else {
+                            scheduler.read(sensor, lsm9DS0Sample);
+                            convert(lsm9DS0, sensor, lsm9DS0Sample, sample);
+                        }
 
                         //Log.i(TAG,"Read sensor info");
-                        float[] sample = new float[] { 0.0f, 0.0f, 0.0f };
-
                         return new UserSensorReading(
                                 sample,
-                                SensorManager.SENSOR_STATUS_ACCURACY_HIGH); // 120Hz
+                                SensorManager.SENSOR_STATUS_ACCURACY_HIGH);
                     }
 
                     @Override
                     public void setEnabled(boolean enabled) throws IOException {
-                        if (enabled) {
-                            //mma7660fc.setMode(Mma7660Fc.MODE_ACTIVE);
+                        if (fused) {
+                            boolean wasFusing = scheduler.isEnabled(LSM9DS0ReadScheduler.ROTATION)
+                                    || scheduler.isEnabled(LSM9DS0ReadScheduler.GAME_ROTATION);
+                            scheduler.setEnabled(sensor, enabled);
+                            if (enabled && !wasFusing) {
+                                // The orientation has moved on since the filters last ran
+                                fusion.reset();
+                            }
+                            fusion.setEnabled(scheduler.isEnabled(LSM9DS0ReadScheduler.ROTATION),
+                                    scheduler.isEnabled(LSM9DS0ReadScheduler.GAME_ROTATION));
                         } else {
-                            //mma7660fc.setMode(Mma7660Fc.MODE_STANDBY);
+                            scheduler.setEnabled(sensor, enabled);
                         }
                     }
                 })
                 .build();
     }
+
+    /**
+     * Raw readings to the framework units: m/s^2, rad/s, micro Tesla and Celsius
+     */
+    static void convert(LSM9DS0 lsm9DS0, int sensor, LSM9DS0Sample lsm9DS0Sample, float[] values) {
+        switch (sensor) {
+            case LSM9DS0ReadScheduler.GYRO:
+                values[0] = (float) Math.toRadians(lsm9DS0.calcGyro(lsm9DS0Sample.gx));
+                values[1] = (float) Math.toRadians(lsm9DS0.calcGyro(lsm9DS0Sample.gy));
+                values[2] = (float) Math.toRadians(lsm9DS0.calcGyro(lsm9DS0Sample.gz));
+                break;
+            case LSM9DS0ReadScheduler.ACCEL:
+                values[0] = lsm9DS0.calcAccel(lsm9DS0Sample.ax) * SensorManager.GRAVITY_EARTH;
+                values[1] = lsm9DS0.calcAccel(lsm9DS0Sample.ay) * SensorManager.GRAVITY_EARTH;
+                values[2] = lsm9DS0.calcAccel(lsm9DS0Sample.az) * SensorManager.GRAVITY_EARTH;
+                break;
+            case LSM9DS0ReadScheduler.MAG:
+                values[0] = lsm9DS0.calcMag(lsm9DS0Sample.mx) * GAUSS_TO_MICROTESLA;
+                values[1] = lsm9DS0.calcMag(lsm9DS0Sample.my) * GAUSS_TO_MICROTESLA;
+                values[2] = lsm9DS0.calcMag(lsm9DS0Sample.mz) * GAUSS_TO_MICROTESLA;
+                break;
+            default:
+                values[0] = lsm9DS0.calcTemp(lsm9DS0Sample.temperature);
+                break;
+        }
+    }
 }
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2017 Choong Hong Cheng, Lockswitch Sdn Bhd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.lockswitch.android.things.contrib.driver.sparkfun;
+
+/**
+ * Samples of one sensor drained from its 32 slot hardware FIFO, oldest first, filled in
+ * place by {@link LSM9DS0#readGyroFifo(LSM9DS0FifoBatch)} and
+ * {@link LSM9DS0#readAccelFifo(LSM9DS0FifoBatch)} so one instance can be reused
+ */
+public class LSM9DS0FifoBatch {
+    public static final int CAPACITY = 32;
+
+    public final int[] x = new int[CAPACITY];
+    public final int[] y = new int[CAPACITY];
+    public final int[] z = new int[CAPACITY];
+    // System.nanoTime() of each sample, reconstructed from the output data rate
+    public final long[] timestamp = new long[CAPACITY];
+
+    public int count;
+    // The FIFO was full and older samples have been overwritten since the last drain
+    public boolean overrun;
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2017 Choong Hong Cheng, Lockswitch Sdn Bhd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.lockswitch.android.things.contrib.driver.sparkfun;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The same chain of {@link SampleFilter}s run over the x, y and z axes of one sensor,
+ * each axis with its own filter state:
+ * <pre>
+ * LSM9DS0FilterPipeline pipeline = new LSM9DS0FilterPipeline()
+ *         .add(new MedianFilter(3))
+ *         .add(BiquadFilter.lowPass(760, 50, BiquadFilter.BUTTERWORTH_Q))
+ *         .add(new Decimator(4));
+ * lsm9DS0.readGyroFifo(batch);
+ * pipeline.filter(batch);
+ * </pre>
+ * {@link Decimator} stages drop the matching timestamps as well. Nothing is allocated
+ * per block.
+ */
+public class LSM9DS0FilterPipeline {
+    private final List<SampleFilter[]> stages = new ArrayList<SampleFilter[]>();
+    // One decimator per Decimator stage for the timestamps, null for the other stages
+    private final List<Decimator> timestampStages = new ArrayList<Decimator>();
+
+    // Axes of a FIFO batch, as floats
+    private final float[] x = new float[LSM9DS0FifoBatch.CAPACITY];
+    private final float[] y = new float[LSM9DS0FifoBatch.CAPACITY];
+    private final float[] z = new float[LSM9DS0FifoBatch.CAPACITY];
+
+    /**
+     * Append a stage, run after the ones already added
+     * @param filter used for x, copies of it for y and z
+     * @return this
+     */
+    public LSM9DS0FilterPipeline add(SampleFilter filter) {
+        stages.add(new SampleFilter[] { filter, filter.copy(), filter.copy() });
+        timestampStages.add(filter instanceof Decimator ? (Decimator) filter.copy() : null);
+        return this;
+    }
+
+    /**
+     * Start every stage over
+     */
+    public void reset() {
+        for (int i = 0; i < stages.size(); i++) {
+            for (SampleFilter filter : stages.get(i)) {
+                filter.reset();
+            }
+            if (timestampStages.get(i) != null) {
+                timestampStages.get(i).reset();
+            }
+        }
+    }
+
+    /**
+     * Filter a block of samples in place
+     * @param x
+     * @param y
+     * @param z
+     * @param timestamps may be null
+     * @param count samples from index 0
+     * @return samples left, fewer than count after decimation
+     */
+    public int filter(float[] x, float[] y, float[] z, long[] timestamps, int count) {
+        for (int i = 0; i < stages.size(); i++) {
+            SampleFilter[] stage = stages.get(i);
+            int left = stage[0].filter(x, 0, count);
+            stage[1].filter(y, 0, count);
+            stage[2].filter(z, 0, count);
+            Decimator timestampStage = timestampStages.get(i);
+            if (timestamps != null && timestampStage != null) {
+                timestampStage.filter(timestamps, 0, count);
+            }
+            count = left;
+        }
+        return count;
+    }
+
+    /**
+     * Filter a drained FIFO batch in place, in raw counts, rounding back to integers
+     * @param batch count is updated after decimation
+     * @return samples left
+     */
+    public int filter(LSM9DS0FifoBatch batch) {
+        int count = batch.count;
+        for (int i = 0; i < count; i++) {
+            x[i] = batch.x[i];
+            y[i] = batch.y[i];
+            z[i] = batch.z[i];
+        }
+        count = filter(x, y, z, batch.timestamp, count);
+        for (int i = 0; i < count; i++) {
+            batch.x[i] = Math.round(x[i]);
+            batch.y[i] = Math.round(y[i]);
+            batch.z[i] = Math.round(z[i]);
+        }
+        batch.count = count;
+        return count;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2017 Choong Hong Cheng, Lockswitch Sdn Bhd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.lockswitch.android.things.contrib.driver.sparkfun;
+
+/**
+ * Orientation from raw LSM9DS0 samples, through a 9 axis {@link MadgwickAHRS} for the
+ * rotation vector and a 6 axis one for the game rotation vector. Nothing is allocated
+ * per update:
+ * <pre>
+ * lsm9DS0.readSample(sample);
+ * fusion.update(lsm9DS0, sample, sample.timestamp);
+ * fusion.getRotationVector(values);
+ * </pre>
+ */
+public class LSM9DS0Fusion {
+    // A high gain after a reset pulls the orientation from identity to the actual one,
+    // then the normal gain filters the noise
+    private static final float CONVERGENCE_BETA = 2.5f;
+    private static final float CONVERGENCE_SECONDS = 1.0f;
+    // Longer gaps (e.g. after a standby) are integrated as one nominal period
+    private static final float MAX_DT = 0.5f;
+
+    private final MadgwickAHRS rotation = new MadgwickAHRS(CONVERGENCE_BETA);
+    private final MadgwickAHRS gameRotation = new MadgwickAHRS(CONVERGENCE_BETA);
+    private float beta = MadgwickAHRS.DEFAULT_BETA;
+
+    private boolean rotationEnabled = true;
+    private boolean gameRotationEnabled = true;
+
+    private long lastNanos = 0;
+    private float elapsed = 0.0f;
+
+    /**
+     * @param beta gain once converged, see {@link MadgwickAHRS#MadgwickAHRS(float)}
+     */
+    public synchronized void setBeta(float beta) {
+        this.beta = beta;
+        if (elapsed >= CONVERGENCE_SECONDS) {
+            rotation.setBeta(beta);
+            gameRotation.setBeta(beta);
+        }
+    }
+
+    /**
+     * Only run the filters that are in use
+     * @param rotation 9 axis
+     * @param gameRotation 6 axis
+     */
+    public synchronized void setEnabled(boolean rotation, boolean gameRotation) {
+        rotationEnabled = rotation;
+        gameRotationEnabled = gameRotation;
+    }
+
+    /**
+     * Start over from the identity orientation
+     */
+    public synchronized void reset() {
+        rotation.reset();
+        gameRotation.reset();
+        rotation.setBeta(CONVERGENCE_BETA);
+        gameRotation.setBeta(CONVERGENCE_BETA);
+        lastNanos = 0;
+        elapsed = 0.0f;
+    }
+
+    /**
+     * Feed one set of readings
+     * @param lsm9DS0 converts the raw readings with its current scales
+     * @param sample raw readings
+     * @param nanos System.nanoTime() of the gyroscope reading
+     * @return false when nanos repeats the last update, so nothing changed
+     */
+    public synchronized boolean update(LSM9DS0 lsm9DS0, LSM9DS0Sample sample, long nanos) {
+        if (nanos == lastNanos) {
+            return false;
+        }
+        float dt = (nanos - lastNanos) / 1e9f;
+        if (lastNanos == 0 || dt > MAX_DT || dt < 0.0f) {
+            dt = 1.0f / LSM9DS0.gyroRateHz(lsm9DS0.getGyroODR());
+        }
+        lastNanos = nanos;
+
+        float gx = (float) Math.toRadians(lsm9DS0.calcGyro(sample.gx));
+        float gy = (float) Math.toRadians(lsm9DS0.calcGyro(sample.gy));
+        float gz = (float) Math.toRadians(lsm9DS0.calcGyro(sample.gz));
+        float ax = lsm9DS0.calcAccel(sample.ax);
+        float ay = lsm9DS0.calcAccel(sample.ay);
+        float az = lsm9DS0.calcAccel(sample.az);
+
+        if (rotationEnabled) {
+            rotation.update(gx, gy, gz, ax, ay, az,
+                    lsm9DS0.calcMag(sample.mx), lsm9DS0.calcMag(sample.my), lsm9DS0.calcMag(sample.mz), dt);
+        }
+        if (gameRotationEnabled) {
+            gameRotation.updateIMU(gx, gy, gz, ax, ay, az, dt);
+        }
+
+        if (elapsed < CONVERGENCE_SECONDS) {
+            elapsed += dt;
+            if (elapsed >= CONVERGENCE_SECONDS) {
+                rotation.setBeta(beta);
+                gameRotation.setBeta(beta);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param values receives x, y, z and w, see {@link MadgwickAHRS#getRotationVector}
+     */
+    public synchronized void getRotationVector(float[] values) {
+        rotation.getRotationVector(values);
+    }
+
+    /**
+     * @param values receives x, y, z and w, with a free heading
+     */
+    public synchronized void getGameRotationVector(float[] values) {
+        gameRotation.getRotationVector(values);
+    }
+}
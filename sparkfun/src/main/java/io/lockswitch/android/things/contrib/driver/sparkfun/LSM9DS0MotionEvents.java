@@ -0,0 +1,157 @@
+/*
+ * Copyright 2017 Choong Hong Cheng, Lockswitch Sdn Bhd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.lockswitch.android.things.contrib.driver.sparkfun;
+
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Delivers the clicks, free falls and wake-ups detected by the LSM9DS0 itself, from the
+ * XM interrupt line they are routed to, so nothing polls the accelerometer meanwhile:
+ * <pre>
+ * lsm9DS0.enableClick(true, true, 0.5f, 20, 100, 300);
+ * lsm9DS0.enableFreeFall(0.35f, 30);
+ * lsm9DS0.routeMotionEvents(true);
+ * LSM9DS0MotionEvents events = new LSM9DS0MotionEvents(lsm9DS0, listener);
+ * events.attach(PioInputPin.open(int2Xm));
+ * </pre>
+ * Each edge costs one burst read of the interrupt generator and click sources, which
+ * also clears the latched requests.
+ */
+public class LSM9DS0MotionEvents implements Closeable {
+    private static final String TAG = LSM9DS0MotionEvents.class.getSimpleName();
+
+    public static final int SINGLE_CLICK = 1;
+    public static final int DOUBLE_CLICK = 2;
+    public static final int FREE_FALL = 4;
+    public static final int WAKE_UP = 8;
+
+    public static final int AXIS_X = 1;
+    public static final int AXIS_Y = 2;
+    public static final int AXIS_Z = 4;
+
+    public interface Listener {
+        /**
+         * @param event SINGLE_CLICK, DOUBLE_CLICK, FREE_FALL or WAKE_UP
+         * @param axes the axes involved, a combination of AXIS_X, AXIS_Y and AXIS_Z
+         */
+        void onMotionEvent(int event, int axes);
+    }
+
+    // INT_GEN_1_SRC up to CLICK_SRC in one burst
+    private static final int SOURCE_START = LSM9DS0Constants.INT_GEN_1_SRC;
+    private static final int SOURCE_LENGTH = LSM9DS0Constants.CLICK_SRC - SOURCE_START + 1;
+    // IA bit of the source registers
+    private static final int ACTIVE = 0x40;
+
+    private final LSM9DS0 mLsm9DS0;
+    private final Listener mListener;
+    private final byte[] mSources = new byte[SOURCE_LENGTH];
+
+    private InputPin mPin;
+
+    private final InputPin.OnEdgeListener mEdgeListener = new InputPin.OnEdgeListener() {
+        @Override
+        public void onEdge(InputPin pin) {
+            try {
+                poll();
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to read LSM9DS0 motion events", e);
+            }
+        }
+    };
+
+    public LSM9DS0MotionEvents(LSM9DS0 lsm9DS0, Listener listener) {
+        mLsm9DS0 = lsm9DS0;
+        mListener = listener;
+    }
+
+    /**
+     * Read the sources on the rising edges of the line. The pin is closed with this.
+     * @param pin the XM interrupt line given to {@link LSM9DS0#routeMotionEvents(boolean)}
+     * @throws IOException
+     */
+    public void attach(InputPin pin) throws IOException {
+        mPin = pin;
+        pin.setOnEdgeListener(mEdgeListener);
+        // A latched request from before would hold the line high without another edge
+        if (pin.getValue()) {
+            poll();
+        }
+    }
+
+    /**
+     * Read the sources and deliver whatever they flag, also usable without a line
+     * @return the events delivered, a combination of SINGLE_CLICK, DOUBLE_CLICK, FREE_FALL
+     * and WAKE_UP
+     * @throws IOException
+     */
+    public synchronized int poll() throws IOException {
+        mLsm9DS0.xmReadBytes(SOURCE_START, mSources, SOURCE_LENGTH);
+        int events = 0;
+
+        // INT_GEN_1_SRC: - IA ZH ZL YH YL XH XL, all axes low
+        int freeFall = mSources[LSM9DS0Constants.INT_GEN_1_SRC - SOURCE_START];
+        if ((freeFall & ACTIVE) != 0) {
+            events |= FREE_FALL;
+            mListener.onMotionEvent(FREE_FALL, axes(freeFall));
+        }
+
+        // INT_GEN_2_SRC: any axis high
+        int wakeUp = mSources[LSM9DS0Constants.INT_GEN_2_SRC - SOURCE_START];
+        if ((wakeUp & ACTIVE) != 0) {
+            events |= WAKE_UP;
+            mListener.onMotionEvent(WAKE_UP, axes(wakeUp >> 1));
+        }
+
+        // CLICK_SRC: - IA DClick SClick Sign Z Y X
+        int click = mSources[LSM9DS0Constants.CLICK_SRC - SOURCE_START];
+        if ((click & ACTIVE) != 0) {
+            if ((click & 0x10) != 0) {
+                events |= SINGLE_CLICK;
+                mListener.onMotionEvent(SINGLE_CLICK, click & 0x07);
+            }
+            if ((click & 0x20) != 0) {
+                events |= DOUBLE_CLICK;
+                mListener.onMotionEvent(DOUBLE_CLICK, click & 0x07);
+            }
+        }
+        return events;
+    }
+
+    /**
+     * X, Y and Z flags at bits 0, 2 and 4 of an interrupt generator source
+     */
+    private static int axes(int source) {
+        return (source & 0x01) | ((source >> 1) & 0x02) | ((source >> 2) & 0x04);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mPin != null) {
+            try {
+                mPin.setOnEdgeListener(null);
+                mPin.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to close GPIO", e);
+            }
+            mPin = null;
+        }
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright 2017 Choong Hong Cheng, Lockswitch Sdn Bhd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.lockswitch.android.things.contrib.driver.sparkfun;
+
+import android.util.Log;
+
+import java.io.IOException;
+
+/**
+ * Shares the bus reads of one LSM9DS0 between the sensors registered by
+ * {@link LSM9DS0Driver}. A sensor is only read once its output data period has passed
+ * since its last read, and every other enabled sensor that is due is read along with it.
+ * Disabled sensors are never read, and are powered down once no enabled sensor needs
+ * their part of the chip. The fused ROTATION and GAME_ROTATION sensors need the parts
+ * they are computed from.
+ */
+class LSM9DS0ReadScheduler {
+    private static final String TAG = LSM9DS0ReadScheduler.class.getSimpleName();
+
+    static final int GYRO = 1;
+    static final int ACCEL = 2;
+    static final int MAG = 4;
+    static final int TEMP = 8;
+    static final int ROTATION = 16;
+    static final int GAME_ROTATION = 32;
+    private static final int XM_SENSORS = ACCEL | MAG | TEMP;
+
+    // Longest wait for the first sample after waking a sensor
+    private static final long WAKE_UP_TIMEOUT_MS = 1000;
+
+    private final LSM9DS0 lsm9DS0;
+    private final LSM9DS0Sample sample = new LSM9DS0Sample();
+
+    private int enabled = 0;
+    // System.nanoTime() of the last read of GYRO, ACCEL, MAG and TEMP
+    private final long[] lastRead = new long[4];
+    private long busReads = 0;
+
+    private LSM9DS0Constants.gyro_power gyroStandby = LSM9DS0Constants.gyro_power.G_SLEEP;
+    // Time from the power mode write to the first sample on the last wake-up of GYRO,
+    // ACCEL, MAG and TEMP, 0 when not measured and -1 when it timed out
+    private final long[] wakeUpNanos = new long[4];
+    private boolean measureWakeUp = false;
+
+    LSM9DS0ReadScheduler(LSM9DS0 lsm9DS0) {
+        this.lsm9DS0 = lsm9DS0;
+    }
+
+    LSM9DS0 getLsm9DS0() {
+        return lsm9DS0;
+    }
+
+    /**
+     * @param standby power mode of the gyroscope while disabled, power-down saves more
+     *                but wakes slower than sleep. Applied at once when no enabled sensor,
+     *                fused ones included, needs the gyroscope.
+     * @throws IOException
+     */
+    synchronized void setGyroStandby(LSM9DS0Constants.gyro_power standby) throws IOException {
+        gyroStandby = standby;
+        // The fused sensors keep the gyroscope awake as well
+        if ((parts(enabled) & GYRO) == 0) {
+            lsm9DS0.setGyroPowerMode(standby);
+        }
+    }
+
+    /**
+     * @param measure true to make every wake-up poll the chip until its first sample and
+     *                record how long that took, blocking {@link #setEnabled} for up to a
+     *                second. Off by default.
+     */
+    synchronized void setMeasureWakeUp(boolean measure) {
+        measureWakeUp = measure;
+    }
+
+    /**
+     * Put every sensor in its standby mode, for when nothing is enabled yet
+     * @throws IOException
+     */
+    synchronized void standby() throws IOException {
+        enabled = 0;
+        lsm9DS0.setGyroPowerMode(gyroStandby);
+        lsm9DS0.setAccelPowerDown(true);
+        lsm9DS0.setMagPowerDown(true);
+        lsm9DS0.setTempEnabled(false);
+    }
+
+    /**
+     * Parts of the chip read for a set of sensors
+     * @param sensors
+     * @return combination of GYRO, ACCEL, MAG and TEMP
+     */
+    private static int parts(int sensors) {
+        int parts = sensors & (GYRO | XM_SENSORS);
+        if ((sensors & (ROTATION | GAME_ROTATION)) != 0) {
+            parts |= GYRO | ACCEL;
+        }
+        if ((sensors & ROTATION) != 0) {
+            parts |= MAG;
+        }
+        return parts;
+    }
+
+    /**
+     * Enable or disable a sensor, waking or powering down its parts of the chip as needed.
+     * Returns once the power modes are written, unless wake-ups are being measured, see
+     * {@link #setMeasureWakeUp}.
+     * @param sensor GYRO, ACCEL, MAG, TEMP, ROTATION or GAME_ROTATION
+     * @param enable
+     * @throws IOException
+     */
+    synchronized void setEnabled(int sensor, boolean enable) throws IOException {
+        int before = parts(enabled);
+        if (enable) {
+            enabled |= sensor;
+        } else {
+            enabled &= ~sensor;
+        }
+        int after = parts(enabled);
+        // Whatever was read before is stale by the time the parts come back
+        for (int part = GYRO; part <= TEMP; part <<= 1) {
+            if ((after & part) != 0 && (before & part) == 0) {
+                lastRead[index(part)] = 0;
+            }
+        }
+
+        int changed = before ^ after;
+        if ((changed & GYRO) != 0) {
+            if ((after & GYRO) != 0) {
+                if (measureWakeUp) {
+                    // Consume any sample left over from before the standby
+                    lsm9DS0.readGyro(sample);
+                }
+                long start = System.nanoTime();
+                lsm9DS0.setGyroPowerMode(LSM9DS0Constants.gyro_power.G_NORMAL);
+                if (measureWakeUp) {
+                    wokeUp(GYRO, start, lsm9DS0.waitForGyroData(WAKE_UP_TIMEOUT_MS));
+                }
+            } else {
+                lsm9DS0.setGyroPowerMode(gyroStandby);
+            }
+        }
+        if ((changed & ACCEL) != 0) {
+            if ((after & ACCEL) != 0) {
+                if (measureWakeUp) {
+                    lsm9DS0.readAccel(sample);
+                }
+                long start = System.nanoTime();
+                lsm9DS0.setAccelPowerDown(false);
+                if (measureWakeUp) {
+                    wokeUp(ACCEL, start, lsm9DS0.waitForAccelData(WAKE_UP_TIMEOUT_MS));
+                }
+            } else {
+                lsm9DS0.setAccelPowerDown(true);
+            }
+        }
+        if ((changed & TEMP) != 0) {
+            lsm9DS0.setTempEnabled((after & TEMP) != 0);
+        }
+        // The temperature converts along with the magnetometer, which stays up as long
+        // as either is needed
+        boolean magNeeded = (after & (MAG | TEMP)) != 0;
+        if (magNeeded != ((before & (MAG | TEMP)) != 0)) {
+            if (magNeeded) {
+                if (measureWakeUp) {
+                    lsm9DS0.readMag(sample);
+                }
+                long start = System.nanoTime();
+                lsm9DS0.setMagPowerDown(false);
+                if (measureWakeUp) {
+                    wokeUp((after & MAG) != 0 ? MAG : TEMP, start, lsm9DS0.waitForMagData(WAKE_UP_TIMEOUT_MS));
+                }
+            } else {
+                lsm9DS0.setMagPowerDown(true);
+            }
+        }
+    }
+
+    private void wokeUp(int sensor, long start, boolean ready) {
+        long elapsed = System.nanoTime() - start;
+        wakeUpNanos[index(sensor)] = ready ? elapsed : -1;
+        if (ready) {
+            Log.i(TAG, "Sensor " + sensor + " woke up in " + elapsed / 1000 + " us");
+        } else {
+            Log.w(TAG, "Sensor " + sensor + " had no data " + WAKE_UP_TIMEOUT_MS + " ms after waking up");
+        }
+    }
+
+    /**
+     * @param sensor GYRO, ACCEL, MAG or TEMP
+     * @return time from the power mode write to the first sample on the last measured
+     * wake-up, 0 when none was measured and -1 when it timed out
+     */
+    synchronized long getWakeUpMicros(int sensor) {
+        long nanos = wakeUpNanos[index(sensor)];
+        return nanos < 0 ? -1 : nanos / 1000;
+    }
+
+    synchronized boolean isEnabled(int sensor) {
+        return (enabled & sensor) != 0;
+    }
+
+    /**
+     * @return number of bus reads, for the benchmarks
+     */
+    synchronized long getBusReads() {
+        return busReads;
+    }
+
+    /**
+     * Latest reading of a sensor, from the bus when it may have new data
+     * @param sensor GYRO, ACCEL, MAG or TEMP
+     * @param destination receives the sensor fields
+     * @return System.nanoTime() when the sensor was last read from the bus
+     * @throws IOException
+     */
+    synchronized long read(int sensor, LSM9DS0Sample destination) throws IOException {
+        long now = System.nanoTime();
+        if (isDue(sensor, now)) {
+            int due = sensor;
+            int parts = parts(enabled);
+            for (int other = GYRO; other <= TEMP; other <<= 1) {
+                if ((parts & other) != 0 && isDue(other, now)) {
+                    due |= other;
+                }
+            }
+            readBus(due);
+            for (int other = GYRO; other <= TEMP; other <<= 1) {
+                if ((due & other) != 0) {
+                    lastRead[index(other)] = now;
+                }
+            }
+        }
+        destination.set(sample);
+        return lastRead[index(sensor)];
+    }
+
+    private boolean isDue(int sensor, long now) {
+        long last = lastRead[index(sensor)];
+        return last == 0 || now - last >= periodNanos(sensor);
+    }
+
+    private long periodNanos(int sensor) {
+        float rateHz;
+        switch (sensor) {
+            case GYRO:
+                rateHz = LSM9DS0.gyroRateHz(lsm9DS0.getGyroODR());
+                break;
+            case ACCEL:
+                rateHz = LSM9DS0.accelRateHz(lsm9DS0.getAccelODR());
+                break;
+            default:
+                // The temperature is converted along with the magnetometer
+                rateHz = LSM9DS0.magRateHz(lsm9DS0.getMagODR());
+                break;
+        }
+        return rateHz > 0 ? (long) (1e9 / rateHz) : Long.MAX_VALUE;
+    }
+
+    /**
+     * One read per device, the XM burst only when it saves transactions
+     */
+    private void readBus(int sensors) throws IOException {
+        if ((sensors & GYRO) != 0) {
+            lsm9DS0.readGyro(sample);
+            busReads++;
+        }
+        int xmSensors = sensors & XM_SENSORS;
+        if (Integer.bitCount(xmSensors) > 1) {
+            lsm9DS0.readAccelMagTemp(sample);
+            busReads++;
+        } else if (xmSensors == ACCEL) {
+            lsm9DS0.readAccel(sample);
+            busReads++;
+        } else if (xmSensors == MAG) {
+            lsm9DS0.readMag(sample);
+            busReads++;
+        } else if (xmSensors == TEMP) {
+            lsm9DS0.readTemp(sample);
+            busReads++;
+        }
+    }
+
+    private static int index(int sensor) {
+        return Integer.numberOfTrailingZeros(sensor);
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ * Copyright 2017 Choong Hong Cheng, Lockswitch Sdn Bhd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.lockswitch.android.things.contrib.driver.sparkfun;
+
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends LSM9DS0 samples to memory-mapped files, fast enough to keep up with the
+ * acquisition thread it is usually the listener of:
+ * <pre>
+ * recorder = new LSM9DS0Recorder(directory, "ride", 100000, 10);
+ * acquisition.setListener(recorder);
+ * </pre>
+ * Each file holds a fixed number of samples and the oldest files are deleted past a
+ * limit. The next file is created and mapped ahead of time on a background thread, which
+ * also writes full files out and deletes old ones, so moving on to a new file only blocks
+ * the caller when storage is a whole file behind. A file is a 32 byte header followed by 28 byte records, little endian:
+ * <pre>
+ * header: magic "L9R1", record size, samples written, file index, first sequence (long),
+ *         gyro, accel and mag scale, gyro, accel and mag rate (byte each), reserved
+ * record: timestamp (long) gx gy gz ax ay az mx my mz temperature (short each)
+ * </pre>
+ * Settings are stored as their ordinal plus one, 0 when not recorded. Readings are
+ * saturated to 16 bits, which only matters for calibrated ones. Read back with
+ * {@link LSM9DS0Replay}.
+ */
+public class LSM9DS0Recorder implements LSM9DS0Acquisition.Listener, Closeable {
+    private static final String TAG = LSM9DS0Recorder.class.getSimpleName();
+
+    static final int MAGIC = 0x3152394C; // "L9R1" little endian
+    static final int HEADER_SIZE = 32;
+    static final int RECORD_SIZE = 28;
+    static final int COUNT_OFFSET = 8;
+    static final int SEQUENCE_OFFSET = 16;
+    static final int SETTINGS_OFFSET = 24;
+    static final String SUFFIX = ".lsm";
+
+    private final File directory;
+    private final String prefix;
+    private final int samplesPerFile;
+    private final int maxFiles;
+    private final byte[] settings = new byte[6];
+
+    private final ExecutorService housekeeping;
+    private MappedByteBuffer buffer;
+    private Future<MappedByteBuffer> next;
+    private int fileIndex;
+    private int count;
+    private long written = 0;
+    private boolean failed = false;
+
+    /**
+     * Recorder storing no scale or rate settings
+     * @param directory created if needed
+     * @param prefix file names are prefix-NNNNNN.lsm, numbering on from any already there
+     * @param samplesPerFile
+     * @param maxFiles oldest files past this are deleted, 0 to keep them all
+     * @throws IOException
+     */
+    public LSM9DS0Recorder(File directory, String prefix, int samplesPerFile, int maxFiles)
+            throws IOException {
+        this(directory, prefix, samplesPerFile, maxFiles, null);
+    }
+
+    /**
+     * @param directory created if needed
+     * @param prefix file names are prefix-NNNNNN.lsm, numbering on from any already there
+     * @param samplesPerFile
+     * @param maxFiles oldest files past this are deleted, 0 to keep them all
+     * @param lsm9DS0 chip whose current scales and rates go in every file header, null for
+     *                none
+     * @throws IOException
+     */
+    public LSM9DS0Recorder(File directory, String prefix, int samplesPerFile, int maxFiles,
+                           LSM9DS0 lsm9DS0) throws IOException {
+        if (samplesPerFile <= 0) {
+            throw new IllegalArgumentException("Samples per file must be positive: " + samplesPerFile);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create " + directory);
+        }
+        this.directory = directory;
+        this.prefix = prefix;
+        this.samplesPerFile = samplesPerFile;
+        this.maxFiles = maxFiles;
+        if (lsm9DS0 != null) {
+            settings[0] = (byte) (lsm9DS0.getGyroScale().ordinal() + 1);
+            settings[1] = (byte) (lsm9DS0.getAccelScale().ordinal() + 1);
+            settings[2] = (byte) (lsm9DS0.getMagScale().ordinal() + 1);
+            settings[3] = (byte) (lsm9DS0.getGyroODR().ordinal() + 1);
+            settings[4] = (byte) (lsm9DS0.getAccelODR().ordinal() + 1);
+            settings[5] = (byte) (lsm9DS0.getMagODR().ordinal() + 1);
+        }
+
+        File[] existing = listFiles(directory, prefix);
+        fileIndex = existing.length == 0 ? 0 : index(existing[existing.length - 1], prefix) + 1;
+        buffer = map(fileIndex);
+        count = 0;
+
+        housekeeping = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, TAG + "-housekeeping");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        next = prepare(fileIndex + 1);
+        retire(null, fileIndex);
+    }
+
+    /**
+     * Recording files of a prefix, oldest first
+     * @param directory
+     * @param prefix
+     * @return files, empty when there are none
+     */
+    public static File[] listFiles(File directory, final String prefix) {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(prefix + "-") && name.endsWith(SUFFIX)
+                        && name.length() == prefix.length() + 7 + SUFFIX.length();
+            }
+        });
+        if (files == null) {
+            return new File[0];
+        }
+        // Fixed width numbers, so names sort by index
+        Arrays.sort(files);
+        return files;
+    }
+
+    private static int index(File file, String prefix) {
+        String name = file.getName();
+        return Integer.parseInt(name.substring(prefix.length() + 1, name.length() - SUFFIX.length()));
+    }
+
+    private File file(int index) {
+        return new File(directory, String.format("%s-%06d%s", prefix, index, SUFFIX));
+    }
+
+    private MappedByteBuffer map(int index) throws IOException {
+        long size = HEADER_SIZE + (long) samplesPerFile * RECORD_SIZE;
+        MappedByteBuffer mapped;
+        try (RandomAccessFile raf = new RandomAccessFile(file(index), "rw")) {
+            raf.setLength(size);
+            // The mapping stays valid once the channel is closed
+            mapped = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+        mapped.putInt(0, MAGIC);
+        mapped.putInt(4, RECORD_SIZE);
+        mapped.putInt(COUNT_OFFSET, 0);
+        mapped.putInt(12, index);
+        mapped.putLong(SEQUENCE_OFFSET, 0);
+        for (int i = 0; i < settings.length; i++) {
+            mapped.put(SETTINGS_OFFSET + i, settings[i]);
+        }
+        return mapped;
+    }
+
+    private Future<MappedByteBuffer> prepare(final int index) {
+        return housekeeping.submit(new Callable<MappedByteBuffer>() {
+            @Override
+            public MappedByteBuffer call() throws IOException {
+                return map(index);
+            }
+        });
+    }
+
+    private void retire(final MappedByteBuffer full, final int newestIndex) {
+        housekeeping.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (full != null) {
+                    full.force();
+                }
+                if (maxFiles <= 0) {
+                    return;
+                }
+                for (File file : listFiles(directory, prefix)) {
+                    if (index(file, prefix) > newestIndex - maxFiles) {
+                        break;
+                    }
+                    if (!file.delete()) {
+                        Log.w(TAG, "Unable to delete " + file);
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onSample(LSM9DS0Sample sample, long sequence) {
+        append(sample, sequence);
+    }
+
+    /**
+     * Append one sample, moving on to a new file once the current one is full
+     * @param sample
+     * @param sequence stored with the first sample of each file
+     * @return false when the recorder is closed or could not open its next file
+     */
+    public synchronized boolean append(LSM9DS0Sample sample, long sequence) {
+        if (buffer == null || failed) {
+            return false;
+        }
+        if (count == samplesPerFile) {
+            MappedByteBuffer full = buffer;
+            try {
+                // Normally mapped long ago, only waits when housekeeping fell behind
+                buffer = next.get();
+            } catch (ExecutionException e) {
+                Log.w(TAG, "Unable to open the next recording file, stopped", e.getCause());
+                failed = true;
+                return false;
+            } catch (InterruptedException e) {
+                // Still full, the next append tries again
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            fileIndex++;
+            count = 0;
+            retire(full, fileIndex);
+            next = prepare(fileIndex + 1);
+        }
+        if (count == 0) {
+            buffer.putLong(SEQUENCE_OFFSET, sequence);
+        }
+
+        int offset = HEADER_SIZE + count * RECORD_SIZE;
+        buffer.putLong(offset, sample.timestamp);
+        buffer.putShort(offset + 8, saturate(sample.gx));
+        buffer.putShort(offset + 10, saturate(sample.gy));
+        buffer.putShort(offset + 12, saturate(sample.gz));
+        buffer.putShort(offset + 14, saturate(sample.ax));
+        buffer.putShort(offset + 16, saturate(sample.ay));
+        buffer.putShort(offset + 18, saturate(sample.az));
+        buffer.putShort(offset + 20, saturate(sample.mx));
+        buffer.putShort(offset + 22, saturate(sample.my));
+        buffer.putShort(offset + 24, saturate(sample.mz));
+        buffer.putShort(offset + 26, saturate(sample.temperature));
+        // The count goes last, so a crash never leaves a half written record counted
+        buffer.putInt(COUNT_OFFSET, ++count);
+        written++;
+        return true;
+    }
+
+    private static short saturate(int value) {
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+    }
+
+    /**
+     * @return samples appended since created
+     */
+    public synchronized long getSampleCount() {
+        return written;
+    }
+
+    /**
+     * Write the current file out to storage, otherwise left to the OS
+     */
+    public synchronized void flush() {
+        if (buffer != null) {
+            buffer.force();
+        }
+    }
+
+    /**
+     * Write the current file out and wait for housekeeping to finish, deleting the file
+     * mapped ahead since it holds nothing
+     * @throws IOException
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (buffer == null) {
+            return;
+        }
+        buffer.force();
+        buffer = null;
+        housekeeping.shutdown();
+        try {
+            next.get();
+            File unused = file(fileIndex + 1);
+            if (!unused.delete()) {
+                Log.w(TAG, "Unable to delete " + unused);
+            }
+            housekeeping.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            // Never created, nothing to delete
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
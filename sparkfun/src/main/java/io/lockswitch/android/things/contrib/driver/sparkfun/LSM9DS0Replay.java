@@ -0,0 +1,206 @@
+/*
+ * Copyright 2017 Choong Hong Cheng, Lockswitch Sdn Bhd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.lockswitch.android.things.contrib.driver.sparkfun;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Feeds a {@link LSM9DS0Recorder} recording into a {@link LSM9DS0SampleRing} and a
+ * {@link LSM9DS0Acquisition.Listener}, the same way {@link LSM9DS0Acquisition} does with
+ * live samples:
+ * <pre>
+ * LSM9DS0Replay replay = new LSM9DS0Replay(LSM9DS0Recorder.listFiles(directory, "ride"), ring);
+ * replay.setListener(listener);
+ * replay.replay(4.0f); // 4 times as fast
+ * </pre>
+ * Timestamps keep their recorded spacing whatever the speed, shifted to start at the
+ * replay, so the fusion and filters see the same time steps as they did live. The scales
+ * and rates the recording was made with, when stored, convert the readings the same way
+ * too:
+ * <pre>
+ * lsm9DS0.setGyroScale(replay.getGyroScale());
+ * </pre>
+ */
+public class LSM9DS0Replay {
+    private final File[] files;
+    private final LSM9DS0SampleRing ring;
+    private volatile LSM9DS0Acquisition.Listener listener;
+    private final byte[] settings = new byte[6];
+
+    /**
+     * @param files recording files in order, see {@link LSM9DS0Recorder#listFiles}
+     * @param ring receives every sample, may be null
+     * @throws IOException when the first file is not a recording
+     */
+    public LSM9DS0Replay(File[] files, LSM9DS0SampleRing ring) throws IOException {
+        this.files = files.clone();
+        this.ring = ring;
+        if (files.length > 0) {
+            MappedByteBuffer buffer = map(files[0]);
+            for (int i = 0; i < settings.length; i++) {
+                settings[i] = buffer.get(LSM9DS0Recorder.SETTINGS_OFFSET + i);
+            }
+        }
+    }
+
+    private static <T> T setting(T[] values, byte stored) {
+        return stored > 0 && stored <= values.length ? values[stored - 1] : null;
+    }
+
+    /**
+     * @return gyroscope scale recorded with, null when not stored
+     */
+    public LSM9DS0Constants.gyro_scale getGyroScale() {
+        return setting(LSM9DS0Constants.gyro_scale.values(), settings[0]);
+    }
+
+    /**
+     * @return accelerometer scale recorded with, null when not stored
+     */
+    public LSM9DS0Constants.accel_scale getAccelScale() {
+        return setting(LSM9DS0Constants.accel_scale.values(), settings[1]);
+    }
+
+    /**
+     * @return magnetometer scale recorded with, null when not stored
+     */
+    public LSM9DS0Constants.mag_scale getMagScale() {
+        return setting(LSM9DS0Constants.mag_scale.values(), settings[2]);
+    }
+
+    /**
+     * @return gyroscope rate recorded with, null when not stored
+     */
+    public LSM9DS0Constants.gyro_odr getGyroODR() {
+        return setting(LSM9DS0Constants.gyro_odr.values(), settings[3]);
+    }
+
+    /**
+     * @return accelerometer rate recorded with, null when not stored
+     */
+    public LSM9DS0Constants.accel_odr getAccelODR() {
+        return setting(LSM9DS0Constants.accel_odr.values(), settings[4]);
+    }
+
+    /**
+     * @return magnetometer rate recorded with, null when not stored
+     */
+    public LSM9DS0Constants.mag_odr getMagODR() {
+        return setting(LSM9DS0Constants.mag_odr.values(), settings[5]);
+    }
+
+    /**
+     * @param listener called on the replaying thread with every sample, null for none
+     */
+    public void setListener(LSM9DS0Acquisition.Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Play the whole recording on the calling thread
+     * @param speed 1 for the original pace, 2 for twice as fast, 0 for as fast as possible
+     * @return samples played, fewer when interrupted
+     * @throws IOException when a file is not a recording
+     */
+    public long replay(float speed) throws IOException {
+        LSM9DS0Sample sample = new LSM9DS0Sample();
+        long start = System.nanoTime();
+        long first = 0;
+        long played = 0;
+        for (File file : files) {
+            MappedByteBuffer buffer = map(file);
+            int count = buffer.getInt(LSM9DS0Recorder.COUNT_OFFSET);
+            long sequence = buffer.getLong(LSM9DS0Recorder.SEQUENCE_OFFSET);
+            for (int i = 0; i < count; i++) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return played;
+                }
+                int offset = LSM9DS0Recorder.HEADER_SIZE + i * LSM9DS0Recorder.RECORD_SIZE;
+                long timestamp = buffer.getLong(offset);
+                if (played == 0) {
+                    first = timestamp;
+                }
+                long elapsed = timestamp - first;
+                if (speed > 0) {
+                    long deadline = start + (long) (elapsed / speed);
+                    long now;
+                    while ((now = System.nanoTime()) < deadline && !Thread.currentThread().isInterrupted()) {
+                        LockSupport.parkNanos(deadline - now);
+                    }
+                }
+
+                sample.timestamp = start + elapsed;
+                sample.gx = buffer.getShort(offset + 8);
+                sample.gy = buffer.getShort(offset + 10);
+                sample.gz = buffer.getShort(offset + 12);
+                sample.ax = buffer.getShort(offset + 14);
+                sample.ay = buffer.getShort(offset + 16);
+                sample.az = buffer.getShort(offset + 18);
+                sample.mx = buffer.getShort(offset + 20);
+                sample.my = buffer.getShort(offset + 22);
+                sample.mz = buffer.getShort(offset + 24);
+                sample.temperature = buffer.getShort(offset + 26);
+                played++;
+
+                long published = ring != null ? ring.put(sample) : sequence + i;
+                LSM9DS0Acquisition.Listener current = listener;
+                if (current != null) {
+                    current.onSample(sample, published);
+                }
+            }
+        }
+        return played;
+    }
+
+    /**
+     * @param files
+     * @return samples held by the files
+     * @throws IOException when a file is not a recording
+     */
+    public static long countSamples(File[] files) throws IOException {
+        long total = 0;
+        for (File file : files) {
+            total += map(file).getInt(LSM9DS0Recorder.COUNT_OFFSET);
+        }
+        return total;
+    }
+
+    private static MappedByteBuffer map(File file) throws IOException {
+        MappedByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.capacity() < LSM9DS0Recorder.HEADER_SIZE
+                || buffer.getInt(0) != LSM9DS0Recorder.MAGIC
+                || buffer.getInt(4) != LSM9DS0Recorder.RECORD_SIZE) {
+            throw new IOException("Not a LSM9DS0 recording: " + file);
+        }
+        int count = buffer.getInt(LSM9DS0Recorder.COUNT_OFFSET);
+        if (count < 0 || LSM9DS0Recorder.HEADER_SIZE + (long) count * LSM9DS0Recorder.RECORD_SIZE
+                > buffer.capacity()) {
+            throw new IOException("Truncated LSM9DS0 recording: " + file);
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2017 Choong Hong Cheng, Lockswitch Sdn Bhd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.lockswitch.android.things.contrib.driver.sparkfun;
+
+/**
+ * Raw readings of every LSM9DS0 sensor taken together, filled in place by
+ * {@link LSM9DS0#readSample(LSM9DS0Sample)} so one instance can be reused for every read
+ */
+public class LSM9DS0Sample {
+    public int gx, gy, gz; // x, y, and z axis readings of the gyroscope
+    public int ax, ay, az; // x, y, and z axis readings of the accelerometer
+    public int mx, my, mz; // x, y, and z axis readings of the magnetometer
+    public int temperature;
+    public long timestamp; // System.nanoTime() when the read completed
+
+    /**
+     * Copy all readings of another sample
+     * @param other
+     */
+    public void set(LSM9DS0Sample other) {
+        gx = other.gx;
+        gy = other.gy;
+        gz = other.gz;
+        ax = other.ax;
+        ay = other.ay;
+        az = other.az;
+        mx = other.mx;
+        my = other.my;
+        mz = other.mz;
+        temperature = other.temperature;
+        timestamp = other.timestamp;
+    }
+}
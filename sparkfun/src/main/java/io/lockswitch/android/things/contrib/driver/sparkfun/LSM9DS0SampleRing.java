@@ -0,0 +1,228 @@
+/*
+ * Copyright 2017 Choong Hong Cheng, Lockswitch Sdn Bhd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.lockswitch.android.things.contrib.driver.sparkfun;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed size ring of LSM9DS0 samples written by one acquisition thread and read by any
+ * number of consumers, without locks. Every sample gets a sequence number, and a slot is
+ * only read back if its sequence number is the same before and after copying it, so a
+ * consumer never sees a mix of two samples:
+ * <pre>
+ * // acquisition thread
+ * lsm9DS0.readSample(sample);
+ * ring.put(sample);
+ *
+ * // any other thread
+ * LSM9DS0SampleRing.Reader reader = ring.newReader();
+ * while (reader.poll(sample)) {
+ *     ...
+ * }
+ * </pre>
+ * A consumer that falls more than the capacity behind skips ahead to the oldest sample
+ * still held and counts the ones it missed.
+ */
+public class LSM9DS0SampleRing {
+    // gx gy gz ax ay az mx my mz temperature
+    private static final int FIELDS = 10;
+    // Slot sequence while the producer is in the middle of writing it
+    private static final long WRITING = -1;
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicIntegerArray values;
+    private final AtomicLongArray timestamps;
+    private final AtomicLongArray sequences;
+    // Sequence number of the next sample to be put, i.e. the number put so far
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * @param capacity samples held, a power of two
+     */
+    public LSM9DS0SampleRing(int capacity) {
+        if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.capacity = capacity;
+        mask = capacity - 1;
+        values = new AtomicIntegerArray(capacity * FIELDS);
+        timestamps = new AtomicLongArray(capacity);
+        sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, WRITING);
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return sequence number the next sample will get, i.e. the number put so far
+     */
+    public long getHead() {
+        return head.get();
+    }
+
+    /**
+     * Append a sample, overwriting the oldest once full. Only one thread may put.
+     * @param sample copied
+     * @return its sequence number
+     */
+    public long put(LSM9DS0Sample sample) {
+        long sequence = head.get();
+        int slot = (int) (sequence & mask);
+        int base = slot * FIELDS;
+
+        sequences.set(slot, WRITING);
+        values.set(base, sample.gx);
+        values.set(base + 1, sample.gy);
+        values.set(base + 2, sample.gz);
+        values.set(base + 3, sample.ax);
+        values.set(base + 4, sample.ay);
+        values.set(base + 5, sample.az);
+        values.set(base + 6, sample.mx);
+        values.set(base + 7, sample.my);
+        values.set(base + 8, sample.mz);
+        values.set(base + 9, sample.temperature);
+        timestamps.set(slot, sample.timestamp);
+        sequences.set(slot, sequence);
+
+        head.set(sequence + 1);
+        return sequence;
+    }
+
+    /**
+     * Copy one sample out
+     * @param sequence
+     * @param destination only written when the sample was read
+     * @return false when the sample has not been put yet or has been overwritten
+     */
+    public boolean get(long sequence, LSM9DS0Sample destination) {
+        int slot = (int) (sequence & mask);
+        if (sequence < 0 || sequences.get(slot) != sequence) {
+            return false;
+        }
+        int base = slot * FIELDS;
+        int gx = values.get(base);
+        int gy = values.get(base + 1);
+        int gz = values.get(base + 2);
+        int ax = values.get(base + 3);
+        int ay = values.get(base + 4);
+        int az = values.get(base + 5);
+        int mx = values.get(base + 6);
+        int my = values.get(base + 7);
+        int mz = values.get(base + 8);
+        int temperature = values.get(base + 9);
+        long timestamp = timestamps.get(slot);
+        if (sequences.get(slot) != sequence) {
+            // Overwritten while copying
+            return false;
+        }
+
+        destination.gx = gx;
+        destination.gy = gy;
+        destination.gz = gz;
+        destination.ax = ax;
+        destination.ay = ay;
+        destination.az = az;
+        destination.mx = mx;
+        destination.my = my;
+        destination.mz = mz;
+        destination.temperature = temperature;
+        destination.timestamp = timestamp;
+        return true;
+    }
+
+    /**
+     * @return a consumer starting with the next sample put
+     */
+    public Reader newReader() {
+        return new Reader(head.get());
+    }
+
+    /**
+     * Position of one consumer, not thread safe by itself
+     */
+    public class Reader {
+        private long next;
+        private long sequence = -1;
+        private long missed = 0;
+
+        private Reader(long next) {
+            this.next = next;
+        }
+
+        /**
+         * Copy the next sample, skipping ahead if it has been overwritten
+         * @param destination
+         * @return false when there is no new sample
+         */
+        public boolean poll(LSM9DS0Sample destination) {
+            while (true) {
+                long available = head.get();
+                if (next >= available) {
+                    return false;
+                }
+                // The slot of sequence available - capacity is the one being overwritten
+                // next, so start one after it
+                long oldest = available - capacity + 1;
+                if (next < oldest) {
+                    missed += oldest - next;
+                    next = oldest;
+                }
+                if (get(next, destination)) {
+                    sequence = next++;
+                    return true;
+                }
+                // Overwritten under us, the head has moved on
+            }
+        }
+
+        /**
+         * Skip every sample put so far
+         */
+        public void skipToHead() {
+            next = head.get();
+        }
+
+        /**
+         * @return sequence number of the sample last returned by {@link #poll}, -1 before
+         * the first
+         */
+        public long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * @return samples overwritten before this reader got to them
+         */
+        public long getMissed() {
+            return missed;
+        }
+
+        /**
+         * @return samples put but not yet polled, may exceed the capacity
+         */
+        public long getBacklog() {
+            return Math.max(0, head.get() - next);
+        }
+    }
+}
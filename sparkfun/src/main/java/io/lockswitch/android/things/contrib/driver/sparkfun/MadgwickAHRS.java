@@ -0,0 +1,253 @@
+/*
+ * Copyright 2017 Choong Hong Cheng, Lockswitch Sdn Bhd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.lockswitch.android.things.contrib.driver.sparkfun;
+
+/**
+ * Madgwick's gradient descent orientation filter, for 9 axis (with magnetometer) or 6
+ * axis (game rotation, free heading) updates. Works on plain floats and allocates nothing.
+ * http://x-io.co.uk/open-source-imu-and-ahrs-algorithms/
+ */
+public class MadgwickAHRS {
+    // Filter gain, Madgwick's suggested default
+    public static final float DEFAULT_BETA = 0.1f;
+
+    private float beta;
+
+    // Rotation of the sensor frame into the earth frame, x north, y west and z up
+    private float q0 = 1.0f, q1 = 0.0f, q2 = 0.0f, q3 = 0.0f;
+
+    // Rotates the north-west-up earth frame into Android's east-north-up one, 90 degrees
+    // around z
+    private static final float HALF_SQRT2 = (float) Math.sqrt(0.5);
+
+    public MadgwickAHRS() {
+        this(DEFAULT_BETA);
+    }
+
+    /**
+     * @param beta higher converges and follows the accelerometer and magnetometer faster,
+     *             lower trusts the gyroscope more and filters more noise
+     */
+    public MadgwickAHRS(float beta) {
+        this.beta = beta;
+    }
+
+    public void setBeta(float beta) {
+        this.beta = beta;
+    }
+
+    /**
+     * Back to the identity orientation
+     */
+    public void reset() {
+        q0 = 1.0f;
+        q1 = 0.0f;
+        q2 = 0.0f;
+        q3 = 0.0f;
+    }
+
+    /**
+     * 9 axis update. Accelerometer and magnetometer units do not matter, only their
+     * direction is used.
+     * @param gx gyroscope, radians per second
+     * @param gy
+     * @param gz
+     * @param ax accelerometer
+     * @param ay
+     * @param az
+     * @param mx magnetometer
+     * @param my
+     * @param mz
+     * @param dt seconds since the last update
+     */
+    public void update(float gx, float gy, float gz, float ax, float ay, float az,
+                       float mx, float my, float mz, float dt) {
+        if (mx == 0.0f && my == 0.0f && mz == 0.0f) {
+            updateIMU(gx, gy, gz, ax, ay, az, dt);
+            return;
+        }
+
+        // Rate of change of the quaternion from the gyroscope
+        float qDot1 = 0.5f * (-q1 * gx - q2 * gy - q3 * gz);
+        float qDot2 = 0.5f * (q0 * gx + q2 * gz - q3 * gy);
+        float qDot3 = 0.5f * (q0 * gy - q1 * gz + q3 * gx);
+        float qDot4 = 0.5f * (q0 * gz + q1 * gy - q2 * gx);
+
+        if (!(ax == 0.0f && ay == 0.0f && az == 0.0f)) {
+            float recipNorm = invSqrt(ax * ax + ay * ay + az * az);
+            ax *= recipNorm;
+            ay *= recipNorm;
+            az *= recipNorm;
+            recipNorm = invSqrt(mx * mx + my * my + mz * mz);
+            mx *= recipNorm;
+            my *= recipNorm;
+            mz *= recipNorm;
+
+            float _2q0mx = 2.0f * q0 * mx;
+            float _2q0my = 2.0f * q0 * my;
+            float _2q0mz = 2.0f * q0 * mz;
+            float _2q1mx = 2.0f * q1 * mx;
+            float _2q0 = 2.0f * q0;
+            float _2q1 = 2.0f * q1;
+            float _2q2 = 2.0f * q2;
+            float _2q3 = 2.0f * q3;
+            float _2q0q2 = 2.0f * q0 * q2;
+            float _2q2q3 = 2.0f * q2 * q3;
+            float q0q0 = q0 * q0;
+            float q0q1 = q0 * q1;
+            float q0q2 = q0 * q2;
+            float q0q3 = q0 * q3;
+            float q1q1 = q1 * q1;
+            float q1q2 = q1 * q2;
+            float q1q3 = q1 * q3;
+            float q2q2 = q2 * q2;
+            float q2q3 = q2 * q3;
+            float q3q3 = q3 * q3;
+
+            // Reference direction of the earth magnetic field
+            float hx = mx * q0q0 - _2q0my * q3 + _2q0mz * q2 + mx * q1q1 + _2q1 * my * q2 + _2q1 * mz * q3
+                    - mx * q2q2 - mx * q3q3;
+            float hy = _2q0mx * q3 + my * q0q0 - _2q0mz * q1 + _2q1mx * q2 - my * q1q1 + my * q2q2
+                    + _2q2 * mz * q3 - my * q3q3;
+            float _2bx = (float) Math.sqrt(hx * hx + hy * hy);
+            float _2bz = -_2q0mx * q2 + _2q0my * q1 + mz * q0q0 + _2q1mx * q3 - mz * q1q1 + _2q2 * my * q3
+                    - mz * q2q2 + mz * q3q3;
+            float _4bx = 2.0f * _2bx;
+            float _4bz = 2.0f * _2bz;
+
+            // Gradient descent corrective step
+            float fx = 2.0f * q1q3 - _2q0q2 - ax;
+            float fy = 2.0f * q0q1 + _2q2q3 - ay;
+            float fz = 1.0f - 2.0f * q1q1 - 2.0f * q2q2 - az;
+            float bx = _2bx * (0.5f - q2q2 - q3q3) + _2bz * (q1q3 - q0q2) - mx;
+            float by = _2bx * (q1q2 - q0q3) + _2bz * (q0q1 + q2q3) - my;
+            float bz = _2bx * (q0q2 + q1q3) + _2bz * (0.5f - q1q1 - q2q2) - mz;
+            float s0 = -_2q2 * fx + _2q1 * fy - _2bz * q2 * bx + (-_2bx * q3 + _2bz * q1) * by
+                    + _2bx * q2 * bz;
+            float s1 = _2q3 * fx + _2q0 * fy - 4.0f * q1 * fz + _2bz * q3 * bx + (_2bx * q2 + _2bz * q0) * by
+                    + (_2bx * q3 - _4bz * q1) * bz;
+            float s2 = -_2q0 * fx + _2q3 * fy - 4.0f * q2 * fz + (-_4bx * q2 - _2bz * q0) * bx
+                    + (_2bx * q1 + _2bz * q3) * by + (_2bx * q0 - _4bz * q2) * bz;
+            float s3 = _2q1 * fx + _2q2 * fy + (-_4bx * q3 + _2bz * q1) * bx + (-_2bx * q0 + _2bz * q2) * by
+                    + _2bx * q1 * bz;
+            recipNorm = invSqrt(s0 * s0 + s1 * s1 + s2 * s2 + s3 * s3);
+            qDot1 -= beta * s0 * recipNorm;
+            qDot2 -= beta * s1 * recipNorm;
+            qDot3 -= beta * s2 * recipNorm;
+            qDot4 -= beta * s3 * recipNorm;
+        }
+
+        integrate(qDot1, qDot2, qDot3, qDot4, dt);
+    }
+
+    /**
+     * 6 axis update, the heading is free to drift
+     * @param gx gyroscope, radians per second
+     * @param gy
+     * @param gz
+     * @param ax accelerometer, any unit
+     * @param ay
+     * @param az
+     * @param dt seconds since the last update
+     */
+    public void updateIMU(float gx, float gy, float gz, float ax, float ay, float az, float dt) {
+        float qDot1 = 0.5f * (-q1 * gx - q2 * gy - q3 * gz);
+        float qDot2 = 0.5f * (q0 * gx + q2 * gz - q3 * gy);
+        float qDot3 = 0.5f * (q0 * gy - q1 * gz + q3 * gx);
+        float qDot4 = 0.5f * (q0 * gz + q1 * gy - q2 * gx);
+
+        if (!(ax == 0.0f && ay == 0.0f && az == 0.0f)) {
+            float recipNorm = invSqrt(ax * ax + ay * ay + az * az);
+            ax *= recipNorm;
+            ay *= recipNorm;
+            az *= recipNorm;
+
+            float _2q0 = 2.0f * q0;
+            float _2q1 = 2.0f * q1;
+            float _2q2 = 2.0f * q2;
+            float _2q3 = 2.0f * q3;
+            float _4q0 = 4.0f * q0;
+            float _4q1 = 4.0f * q1;
+            float _4q2 = 4.0f * q2;
+            float _8q1 = 8.0f * q1;
+            float _8q2 = 8.0f * q2;
+            float q0q0 = q0 * q0;
+            float q1q1 = q1 * q1;
+            float q2q2 = q2 * q2;
+            float q3q3 = q3 * q3;
+
+            float s0 = _4q0 * q2q2 + _2q2 * ax + _4q0 * q1q1 - _2q1 * ay;
+            float s1 = _4q1 * q3q3 - _2q3 * ax + 4.0f * q0q0 * q1 - _2q0 * ay - _4q1 + _8q1 * q1q1
+                    + _8q1 * q2q2 + _4q1 * az;
+            float s2 = 4.0f * q0q0 * q2 + _2q0 * ax + _4q2 * q3q3 - _2q3 * ay - _4q2 + _8q2 * q1q1
+                    + _8q2 * q2q2 + _4q2 * az;
+            float s3 = 4.0f * q1q1 * q3 - _2q1 * ax + 4.0f * q2q2 * q3 - _2q2 * ay;
+            recipNorm = invSqrt(s0 * s0 + s1 * s1 + s2 * s2 + s3 * s3);
+            qDot1 -= beta * s0 * recipNorm;
+            qDot2 -= beta * s1 * recipNorm;
+            qDot3 -= beta * s2 * recipNorm;
+            qDot4 -= beta * s3 * recipNorm;
+        }
+
+        integrate(qDot1, qDot2, qDot3, qDot4, dt);
+    }
+
+    private void integrate(float qDot1, float qDot2, float qDot3, float qDot4, float dt) {
+        q0 += qDot1 * dt;
+        q1 += qDot2 * dt;
+        q2 += qDot3 * dt;
+        q3 += qDot4 * dt;
+
+        float recipNorm = invSqrt(q0 * q0 + q1 * q1 + q2 * q2 + q3 * q3);
+        q0 *= recipNorm;
+        q1 *= recipNorm;
+        q2 *= recipNorm;
+        q3 *= recipNorm;
+    }
+
+    // 0 for 0, so an exactly converged gradient step adds nothing instead of NaN
+    private static float invSqrt(float x) {
+        return x > 0.0f ? (float) (1.0 / Math.sqrt(x)) : 0.0f;
+    }
+
+    /**
+     * @param quaternion receives w, x, y and z of the sensor to north-west-up rotation
+     */
+    public void getQuaternion(float[] quaternion) {
+        quaternion[0] = q0;
+        quaternion[1] = q1;
+        quaternion[2] = q2;
+        quaternion[3] = q3;
+    }
+
+    /**
+     * Orientation in the layout of Sensor.TYPE_ROTATION_VECTOR, relative to Android's
+     * east-north-up world frame
+     * @param values receives x, y, z and w, the scalar part always positive
+     */
+    public void getRotationVector(float[] values) {
+        float w = HALF_SQRT2 * (q0 - q3);
+        float x = HALF_SQRT2 * (q1 - q2);
+        float y = HALF_SQRT2 * (q2 + q1);
+        float z = HALF_SQRT2 * (q3 + q0);
+        float sign = w < 0.0f ? -1.0f : 1.0f;
+        values[0] = sign * x;
+        values[1] = sign * y;
+        values[2] = sign * z;
+        values[3] = sign * w;
+    }
+}
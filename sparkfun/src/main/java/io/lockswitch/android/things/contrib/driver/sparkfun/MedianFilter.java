@@ -0,0 +1,90 @@
+/*
+ * Copyright 2017 Choong Hong Cheng, Lockswitch Sdn Bhd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.lockswitch.android.things.contrib.driver.sparkfun;
+
+/**
+ * Running median of the last samples, which drops single sample spikes such as a bus
+ * glitch without smearing edges. The window is kept sorted, so each sample costs one
+ * removal and one insertion.
+ */
+public class MedianFilter implements SampleFilter {
+    private final int window;
+    // Inputs in arrival order, and the same values sorted
+    private final float[] ring;
+    private final float[] sorted;
+    private int position = 0;
+    private boolean primed = false;
+
+    /**
+     * @param window samples, odd so there is a middle one
+     */
+    public MedianFilter(int window) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("Median window must be positive: " + window);
+        }
+        this.window = window;
+        ring = new float[window];
+        sorted = new float[window];
+    }
+
+    @Override
+    public int filter(float[] data, int offset, int count) {
+        if (count > 0 && !primed) {
+            for (int i = 0; i < window; i++) {
+                ring[i] = data[offset];
+                sorted[i] = data[offset];
+            }
+            primed = true;
+        }
+        for (int i = offset; i < offset + count; i++) {
+            float oldest = ring[position];
+            float x = data[i];
+            ring[position] = x;
+            position = position + 1 == window ? 0 : position + 1;
+
+            // Take the oldest out, then shift the new value into place from there. Matched
+            // by bits, since a NaN never equals itself, and ordered by Float.compare, which
+            // puts NaN above everything so a NaN glitch is dropped like any other spike
+            int oldestBits = Float.floatToIntBits(oldest);
+            int slot = 0;
+            while (Float.floatToIntBits(sorted[slot]) != oldestBits) {
+                slot++;
+            }
+            while (slot > 0 && Float.compare(sorted[slot - 1], x) > 0) {
+                sorted[slot] = sorted[slot - 1];
+                slot--;
+            }
+            while (slot < window - 1 && Float.compare(sorted[slot + 1], x) < 0) {
+                sorted[slot] = sorted[slot + 1];
+                slot++;
+            }
+            sorted[slot] = x;
+            data[i] = sorted[window / 2];
+        }
+        return count;
+    }
+
+    @Override
+    public void reset() {
+        position = 0;
+        primed = false;
+    }
+
+    @Override
+    public SampleFilter copy() {
+        return new MedianFilter(window);
+    }
+}
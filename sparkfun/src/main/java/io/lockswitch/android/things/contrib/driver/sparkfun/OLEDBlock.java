@@ -82,7 +82,8 @@ public class OLEDBlock implements Closeable {
         }
 
         try {
-            ssd1306 = new SSD1306(spiList.get(0));
+            // Panel reset runs in the background, drawing can start right away
+            ssd1306 = new SSD1306(spiList.get(0), true);
         } catch (InterruptedException e) {
             Log.e(TAG,"error",e);
             throw new IOException("Unable to init SSD1306");
@@ -91,6 +92,15 @@ public class OLEDBlock implements Closeable {
         Log.i(TAG, "Completed init");
     }
 
+    /**
+     * OLED Block around an already opened display, without the buttons. Useful to drive
+     * a {@link FakeSSD1306} off-device.
+     * @param ssd1306
+     */
+    public OLEDBlock(SSD1306 ssd1306) {
+        this.ssd1306 = ssd1306;
+    }
+
     /**
      * Method to return SSD1306
      * @return SSD1306
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2017 Choong Hong Cheng, Lockswitch Sdn Bhd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.lockswitch.android.things.contrib.driver.sparkfun;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Digital output line, see {@link PioOutputPin} for the Android Things implementation
+ */
+public interface OutputPin extends Closeable {
+    /**
+     * Drive the line
+     * @param high true for the high level
+     * @throws IOException
+     */
+    void setValue(boolean high) throws IOException;
+}
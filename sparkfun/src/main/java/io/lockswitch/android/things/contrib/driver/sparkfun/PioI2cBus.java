@@ -0,0 +1,82 @@
+/*
+ * Copyright 2017 Choong Hong Cheng, Lockswitch Sdn Bhd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.lockswitch.android.things.contrib.driver.sparkfun;
+
+import com.google.android.things.pio.I2cDevice;
+import com.google.android.things.pio.PeripheralManagerService;
+
+import java.io.IOException;
+
+/**
+ * {@link I2cBus} backed by an Android Things {@link I2cDevice}
+ */
+public class PioI2cBus implements I2cBus {
+    private I2cDevice mDevice;
+    private final BusStatistics mStatistics = new BusStatistics();
+
+    public PioI2cBus(I2cDevice device) {
+        mDevice = device;
+    }
+
+    /**
+     * Open an I2C device
+     * @param name bus name
+     * @param address 7-bit slave address
+     * @return PioI2cBus
+     * @throws IOException
+     */
+    public static PioI2cBus open(String name, int address) throws IOException {
+        return new PioI2cBus(new PeripheralManagerService().openI2cDevice(name, address));
+    }
+
+    @Override
+    public byte readRegByte(int reg) throws IOException {
+        long start = System.nanoTime();
+        byte value = mDevice.readRegByte(reg);
+        mStatistics.record(1, 1, System.nanoTime() - start);
+        return value;
+    }
+
+    @Override
+    public void writeRegByte(int reg, byte data) throws IOException {
+        long start = System.nanoTime();
+        mDevice.writeRegByte(reg, data);
+        mStatistics.record(0, 2, System.nanoTime() - start);
+    }
+
+    @Override
+    public void readRegBuffer(int reg, byte[] buffer, int length) throws IOException {
+        long start = System.nanoTime();
+        mDevice.readRegBuffer(reg, buffer, length);
+        mStatistics.record(length, 1, System.nanoTime() - start);
+    }
+
+    public BusStatistics getStatistics() {
+        return mStatistics;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mDevice != null) {
+            try {
+                mDevice.close();
+            } finally {
+                mDevice = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2017 Choong Hong Cheng, Lockswitch Sdn Bhd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.lockswitch.android.things.contrib.driver.sparkfun;
+
+import com.google.android.things.pio.Gpio;
+import com.google.android.things.pio.GpioCallback;
+import com.google.android.things.pio.PeripheralManagerService;
+
+import java.io.IOException;
+
+/**
+ * {@link InputPin} backed by an Android Things {@link Gpio}, edges are delivered on the
+ * thread of the looper that registered the listener
+ */
+public class PioInputPin implements InputPin {
+    private Gpio mGpio;
+    private OnEdgeListener mListener;
+
+    private final GpioCallback mCallback = new GpioCallback() {
+        @Override
+        public boolean onGpioEdge(Gpio gpio) {
+            OnEdgeListener listener = mListener;
+            if (listener != null) {
+                listener.onEdge(PioInputPin.this);
+            }
+            return true;
+        }
+    };
+
+    public PioInputPin(Gpio gpio) {
+        mGpio = gpio;
+    }
+
+    /**
+     * Open a GPIO as an active high input triggering on rising edges
+     * @param name
+     * @return PioInputPin
+     * @throws IOException
+     */
+    public static PioInputPin open(String name) throws IOException {
+        Gpio gpio = new PeripheralManagerService().openGpio(name);
+        gpio.setDirection(Gpio.DIRECTION_IN);
+        gpio.setActiveType(Gpio.ACTIVE_HIGH);
+        gpio.setEdgeTriggerType(Gpio.EDGE_RISING);
+        return new PioInputPin(gpio);
+    }
+
+    @Override
+    public boolean getValue() throws IOException {
+        return mGpio.getValue();
+    }
+
+    @Override
+    public void setOnEdgeListener(OnEdgeListener listener) throws IOException {
+        if (mListener == null && listener != null) {
+            mGpio.registerGpioCallback(mCallback);
+        } else if (mListener != null && listener == null) {
+            mGpio.unregisterGpioCallback(mCallback);
+        }
+        mListener = listener;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mGpio != null) {
+            try {
+                if (mListener != null) {
+                    mGpio.unregisterGpioCallback(mCallback);
+                    mListener = null;
+                }
+                mGpio.close();
+            } finally {
+                mGpio = null;
+            }
+        }
+    }
+}
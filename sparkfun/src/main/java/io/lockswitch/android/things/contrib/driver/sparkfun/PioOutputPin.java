@@ -0,0 +1,64 @@
+/*
+ * Copyright 2017 Choong Hong Cheng, Lockswitch Sdn Bhd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.lockswitch.android.things.contrib.driver.sparkfun;
+
+import com.google.android.things.pio.Gpio;
+import com.google.android.things.pio.PeripheralManagerService;
+
+import java.io.IOException;
+
+/**
+ * {@link OutputPin} backed by an Android Things {@link Gpio}
+ */
+public class PioOutputPin implements OutputPin {
+    private Gpio mGpio;
+
+    public PioOutputPin(Gpio gpio) {
+        mGpio = gpio;
+    }
+
+    /**
+     * Open a GPIO as an active high output
+     * @param name
+     * @param initiallyHigh
+     * @return PioOutputPin
+     * @throws IOException
+     */
+    public static PioOutputPin open(String name, boolean initiallyHigh) throws IOException {
+        Gpio gpio = new PeripheralManagerService().openGpio(name);
+        gpio.setDirection(initiallyHigh ? Gpio.DIRECTION_OUT_INITIALLY_HIGH
+                : Gpio.DIRECTION_OUT_INITIALLY_LOW);
+        gpio.setActiveType(Gpio.ACTIVE_HIGH);
+        return new PioOutputPin(gpio);
+    }
+
+    @Override
+    public void setValue(boolean high) throws IOException {
+        mGpio.setValue(high);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mGpio != null) {
+            try {
+                mGpio.close();
+            } finally {
+                mGpio = null;
+            }
+        }
+    }
+}
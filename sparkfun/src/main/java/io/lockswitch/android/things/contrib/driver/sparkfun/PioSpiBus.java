@@ -0,0 +1,73 @@
+/*
+ * Copyright 2017 Choong Hong Cheng, Lockswitch Sdn Bhd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.lockswitch.android.things.contrib.driver.sparkfun;
+
+import com.google.android.things.pio.PeripheralManagerService;
+import com.google.android.things.pio.SpiDevice;
+
+import java.io.IOException;
+
+/**
+ * {@link SpiBus} backed by an Android Things {@link SpiDevice}
+ */
+public class PioSpiBus implements SpiBus {
+    private SpiDevice mDevice;
+    private final BusStatistics mStatistics = new BusStatistics();
+
+    public PioSpiBus(SpiDevice device) {
+        mDevice = device;
+    }
+
+    /**
+     * Open and configure an SPI device
+     * @param name
+     * @param mode SpiDevice.MODE0 .. MODE3
+     * @param frequency in Hz
+     * @return PioSpiBus
+     * @throws IOException
+     */
+    public static PioSpiBus open(String name, int mode, int frequency) throws IOException {
+        SpiDevice device = new PeripheralManagerService().openSpiDevice(name);
+        device.setMode(mode);
+        device.setFrequency(frequency);
+        device.setBitsPerWord(8);
+        device.setBitJustification(false);
+        return new PioSpiBus(device);
+    }
+
+    @Override
+    public void write(byte[] buffer, int length) throws IOException {
+        long start = System.nanoTime();
+        mDevice.write(buffer, length);
+        mStatistics.record(0, length, System.nanoTime() - start);
+    }
+
+    public BusStatistics getStatistics() {
+        return mStatistics;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mDevice != null) {
+            try {
+                mDevice.close();
+            } finally {
+                mDevice = null;
+            }
+        }
+    }
+}
@@ -16,15 +16,17 @@
 
 package io.lockswitch.android.things.contrib.driver.sparkfun;
 
-import android.graphics.Bitmap;
 import android.util.Log;
 
-import com.google.android.things.pio.Gpio;
-import com.google.android.things.pio.PeripheralManagerService;
 import com.google.android.things.pio.SpiDevice;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 /**
  * SSD1306 for Sparkfun OLED Block
@@ -35,13 +37,14 @@ import java.io.IOException;
 public class SSD1306 implements Closeable {
     private static final String TAG = "SSD1306";
 
-    private SpiDevice spiDevice;
-    private Gpio DC_PIN;
-    private Gpio RST_PIN;
+    private SpiBus spiDevice;
+    private OutputPin DC_PIN;
+    private OutputPin RST_PIN;
 
     // Screen configuration constants.
     private static final int LCDWIDTH = 64;
     private static final int LCDHEIGHT = 48;
+    private static final int LCDPAGES = LCDHEIGHT / 8;
 
     // Protocol constants
     //private static final int DATA_OFFSET = 1;
@@ -145,43 +148,187 @@ public class SSD1306 implements Closeable {
             (byte) DISPLAYON			//--turn on oled panel
     };
 
+    // Back buffer, all drawing calls go here
     private final byte[] mBuffer = new byte[((LCDWIDTH * LCDHEIGHT) / 8)];
 
+    // Dirty column range for each page of mBuffer, inclusive. An empty page has
+    // start > end. Everything starts dirty as the panel RAM is undefined after reset.
+    private final int[] mDirtyStart = new int[LCDPAGES];
+    private final int[] mDirtyEnd = new int[LCDPAGES];
+
+    // Frame handed over by present() and the frame being flushed by the render thread.
+    // Both are swapped under mFrameLock, the pending one always holds the newest frame.
+    private byte[] mPendingBuffer = new byte[mBuffer.length];
+    private int[] mPendingDirtyStart = new int[LCDPAGES];
+    private int[] mPendingDirtyEnd = new int[LCDPAGES];
+    private byte[] mFrontBuffer = new byte[mBuffer.length];
+    private int[] mFrontDirtyStart = new int[LCDPAGES];
+    private int[] mFrontDirtyEnd = new int[LCDPAGES];
+    private boolean mFramePending = false;
+    private long mFramesPresented = 0;
+    private long mFramesDropped = 0;
+    private final Object mFrameLock = new Object();
+    private RenderThread mRenderThread;
+
+    // Serialise SPI access between the caller and the render thread
+    private final Object mBusLock = new Object();
+
+    // Preallocated SPI transfer buffers, SpiBus.write() always starts at index 0
+    private final byte[] mPageBuffer = new byte[LCDWIDTH];
+
+    // Pending command bytes, sent together with a single DC transition by flushCommands()
+    private static final int COMMAND_BUFFER_SIZE = 32;
+    private final byte[] mCommandBuffer = new byte[COMMAND_BUFFER_SIZE];
+    private int mCommandLength = 0;
+
+    // Last level driven on DC_PIN so repeated data or command writes skip the GPIO calls
+    private static final int DC_UNKNOWN = 0;
+    private static final int DC_COMMAND = 1;
+    private static final int DC_DATA = 2;
+    private int mDcMode = DC_UNKNOWN;
+
+    // Flush statistics
+    private volatile long mBytesSent = 0;
+    private volatile long mBytesSkipped = 0;
+
+    // Reset timing, the datasheet asks for VDD to be stable before RES# is pulled low
+    // for at least 3 us. Thread.sleep() cannot go below 1 ms.
+    private static final long RESET_VDD_SETTLE_MS = 1;
+    private static final long RESET_PULSE_MS = 1;
+
+    // Panel init state, mReady is only changed while holding mBusLock
+    private final FutureTask<Void> mInitFuture;
+    private volatile boolean mReady = false;
+    private boolean mShowDeferred = false;
+    private volatile long mInitTimeNanos = 0;
+
     /**
-     * Contructor to setup SSD1306 OLED
+     * Contructor to setup SSD1306 OLED, blocks until the panel is initialised
      * @param spiName
      * @throws IOException
      * @throws InterruptedException
      */
     public SSD1306(String spiName) throws IOException, InterruptedException {
-        DC_PIN = new PeripheralManagerService().openGpio("GP14");
-        RST_PIN = new PeripheralManagerService().openGpio("GP15");
-        spiDevice = new PeripheralManagerService().openSpiDevice(spiName);
+        this(spiName, false);
+    }
 
-        spiDevice.setMode(SpiDevice.MODE0);
-        spiDevice.setFrequency(10000000);
-        spiDevice.setBitsPerWord(8);
-        spiDevice.setBitJustification(false);
+    /**
+     * Contructor to setup SSD1306 OLED
+     * @param spiName
+     * @param asyncInit true to reset and initialise the panel on a background thread and
+     * return right away, see {@link #getInitFuture()}. Drawing works immediately and
+     * {@link #show()} or {@link #present()} are held back until the panel is ready.
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public SSD1306(String spiName, boolean asyncInit) throws IOException, InterruptedException {
+        this(PioSpiBus.open(spiName, SpiDevice.MODE0, 10000000),
+                PioOutputPin.open("GP14", true),
+                PioOutputPin.open("GP15", true),
+                asyncInit);
+    }
+
+    /**
+     * Contructor to drive a SSD1306 through any bus implementation, e.g. {@link FakeSSD1306}
+     * @param spi SPI bus the panel is on
+     * @param dc data/command line, low for command
+     * @param rst reset line, active low
+     * @param asyncInit see {@link #SSD1306(String, boolean)}
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public SSD1306(SpiBus spi, OutputPin dc, OutputPin rst, boolean asyncInit)
+            throws IOException, InterruptedException {
+        spiDevice = spi;
+        DC_PIN = dc;
+        RST_PIN = rst;
+
+        // mBuffer starts blank, send all of it with the first frame
+        invalidate();
+        clearDirty(mPendingDirtyStart, mPendingDirtyEnd);
+        clearDirty(mFrontDirtyStart, mFrontDirtyEnd);
+
+        mInitFuture = new FutureTask<Void>(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                initPanel();
+                return null;
+            }
+        });
 
-        DC_PIN.setDirection(Gpio.DIRECTION_OUT_INITIALLY_HIGH);
-        RST_PIN.setDirection(Gpio.DIRECTION_OUT_INITIALLY_HIGH);
+        if (asyncInit) {
+            new Thread(mInitFuture, TAG + "-init").start();
+        } else {
+            mInitFuture.run();
+            try {
+                mInitFuture.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof InterruptedException) {
+                    throw (InterruptedException) e.getCause();
+                }
+                throw new IOException("Unable to init SSD1306", e.getCause());
+            }
+        }
+    }
 
-        RST_PIN.setActiveType(Gpio.ACTIVE_HIGH);
-        RST_PIN.setValue(true);
-        Thread.sleep(5000); // VDD (3.3V) goes high at start, lets just chill for 5 ms
-        RST_PIN.setActiveType(Gpio.ACTIVE_LOW);
-        RST_PIN.setValue(true);
-        Thread.sleep(10000); // wait 10ms
-        RST_PIN.setActiveType(Gpio.ACTIVE_HIGH);
-        RST_PIN.setValue(true);
+    /**
+     * Reset the panel and send the init sequence, then flush a frame requested
+     * by {@link #show()} in the meantime
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private void initPanel() throws IOException, InterruptedException {
+        long start = System.nanoTime();
+
+        synchronized (mBusLock) {
+            RST_PIN.setValue(true);
+            Thread.sleep(RESET_VDD_SETTLE_MS); // VDD (3.3V) goes high at start, let it settle
+            RST_PIN.setValue(false);
+            Thread.sleep(RESET_PULSE_MS); // RES# low for at least 3 us
+            RST_PIN.setValue(true);
+
+            for ( byte c : INIT_PAYLOAD ) {
+                queueCommand(c);
+            }
+            flushCommands();
 
-        BitmapHelper.bmpToBytes(mBuffer, DATA_OFFSET,
-                Bitmap.createBitmap(LCDWIDTH, LCDHEIGHT, Bitmap.Config.ARGB_8888),
-                false);
+            mReady = true;
+            mInitTimeNanos = System.nanoTime() - start;
 
-        for ( byte c : INIT_PAYLOAD ) {
-            command(c);
+            if (mShowDeferred) {
+                synchronized (mFrameLock) {
+                    flush(mPendingBuffer, mPendingDirtyStart, mPendingDirtyEnd);
+                }
+                mShowDeferred = false;
+            }
         }
+
+        Log.i(TAG, "Panel init took " + (mInitTimeNanos / 1000) + " us");
+    }
+
+    /**
+     * Future completing once the panel is reset and initialised, already done when the
+     * panel was not initialised asynchronously
+     * @return Future
+     */
+    public Future<Void> getInitFuture() {
+        return mInitFuture;
+    }
+
+    /**
+     * Whether the panel is initialised and accepts frames
+     * @return boolean
+     */
+    public boolean isReady() {
+        return mReady;
+    }
+
+    /**
+     * Time spent in the panel reset and init sequence, 0 until it completed
+     * @return long in microseconds
+     */
+    public long getInitTimeMicros() {
+        return mInitTimeNanos / 1000;
     }
 
     /**
@@ -196,17 +343,105 @@ public class SSD1306 implements Closeable {
             return;
         }
 
+        int index = DATA_OFFSET + x + ((y / 8) * LCDWIDTH);
+        byte previous = mBuffer[index];
+
         switch (color) {
             case WHITE :
-                mBuffer[DATA_OFFSET + x + ((y / 8) * LCDWIDTH)] |= (1 << y % 8);
+                mBuffer[index] |= (1 << y % 8);
                 break;
             case BLACK:
-                mBuffer[DATA_OFFSET + x + ((y / 8) * LCDWIDTH)] &= ~(1 << y % 8);
+                mBuffer[index] &= ~(1 << y % 8);
                 break;
             case INVERSE:
-                mBuffer[DATA_OFFSET + x + ((y / 8) * LCDWIDTH)] ^= (1 << y % 8);
+                mBuffer[index] ^= (1 << y % 8);
                 break;
         }
+
+        if (mBuffer[index] != previous) {
+            markDirty(y / 8, x, x);
+        }
+    }
+
+    /**
+     * Mark a column range of a page as changed since the last {@link #show()}
+     * @param page
+     * @param startColumn first changed column, inclusive
+     * @param endColumn last changed column, inclusive
+     */
+    void markDirty(int page, int startColumn, int endColumn) {
+        if (startColumn < mDirtyStart[page]) {
+            mDirtyStart[page] = startColumn;
+        }
+        if (endColumn > mDirtyEnd[page]) {
+            mDirtyEnd[page] = endColumn;
+        }
+    }
+
+    /**
+     * Force the next {@link #show()} to send the whole buffer, e.g. after the
+     * panel lost its content
+     */
+    public void invalidate() {
+        for (int i = 0; i < LCDPAGES; i++) {
+            mDirtyStart[i] = 0;
+            mDirtyEnd[i] = LCDWIDTH - 1;
+        }
+    }
+
+    private static void clearDirty(int[] dirtyStart, int[] dirtyEnd) {
+        Arrays.fill(dirtyStart, LCDWIDTH);
+        Arrays.fill(dirtyEnd, -1);
+    }
+
+    /**
+     * Number of pixel bytes transmitted by {@link #show()} so far
+     * @return long
+     */
+    public long getBytesSent() {
+        return mBytesSent;
+    }
+
+    /**
+     * Number of pixel bytes {@link #show()} did not transmit because they were unchanged
+     * @return long
+     */
+    public long getBytesSkipped() {
+        return mBytesSkipped;
+    }
+
+    /**
+     * Number of frames submitted through {@link #present()}
+     * @return long
+     */
+    public long getFramesPresented() {
+        synchronized (mFrameLock) {
+            return mFramesPresented;
+        }
+    }
+
+    /**
+     * Number of presented frames replaced by a newer one before reaching the panel
+     * @return long
+     */
+    public long getFramesDropped() {
+        synchronized (mFrameLock) {
+            return mFramesDropped;
+        }
+    }
+
+    /**
+     * Reset the sent/skipped byte and frame counters
+     */
+    public void resetStatistics() {
+        synchronized (mBusLock) {
+            mBytesSent = 0;
+            mBytesSkipped = 0;
+        }
+        synchronized (mFrameLock) {
+            mFramesPresented = 0;
+            mFramesDropped = 0;
+        }
     }
 
     /**
@@ -217,44 +452,27 @@ public class SSD1306 implements Closeable {
      * @param type Font.Type
      */
     public void drawString(int x, int y, String text, Fonts.Type type ) {
-        byte[] characters = text.getBytes();
-
-        for ( byte character : characters ) {
-            int code = (int)character;
-            int index = code - 32;
-
-            if ( index >= 0 && index < 96 ) {
-                char[] pixel = Fonts.font5x5[index];
-
-                if ( type == Fonts.Type.font5x5 )
-                    pixel = Fonts.font5x5[index];
-                else if ( type == Fonts.Type.fontAcme5Outlines )
-                    pixel = Fonts.fontAcme5Outlines[index];
-                else if ( type == Fonts.Type.fontAztech )
-                    pixel = Fonts.fontAztech[index];
-                else if ( type == Fonts.Type.fontCrackers )
-                    pixel = Fonts.fontCrackers[index];
-                else if ( type == Fonts.Type.fontSuperDig )
-                    pixel = Fonts.fontSuperDig[index];
-                else if ( type == Fonts.Type.fontZxpix )
-                    pixel = Fonts.fontZxpix[index];
-
-                // Draw pixels
+        FontAtlas atlas = FontAtlas.get(type);
+        int page = y >> 3;
+        int shift = y & 7;
+        byte[] low = atlas.getLowColumns(shift);
+        byte[] high = shift != 0 ? atlas.getHighColumns(shift) : null;
+        int lowMask = FontAtlas.lowMask(shift);
+        int highMask = shift != 0 ? FontAtlas.highMask(shift) : 0;
+        int length = text.length();
+
+        for ( int c = 0; c < length; c++ ) {
+            int glyph = FontAtlas.glyphOffset(text.charAt(c));
+
+            if ( glyph >= 0 ) {
                 for (int j=0; j < Fonts.CHAR_WIDTH; j++) {
-                    String binary = Integer.toBinaryString(pixel[j]);
-                    while (binary.length() < Fonts.CHAR_HEIGHT)
-                    {
-                        binary = "0" + binary;
+                    int column = x + j;
+                    if (column < 0 || column >= LCDWIDTH) {
+                        continue;
                     }
-
-                    // Reverse it
-                    binary = new StringBuilder(binary).reverse().toString();
-
-                    for (int i = 0; i < Fonts.CHAR_HEIGHT; i++) {
-                        if ( binary.substring(i,i+1).equals("1") )
-                            setPixel((x+j),(y+i),ColorCode.WHITE);
-                        else
-                            setPixel((x+j),(y+i),ColorCode.BLACK);
+                    writeColumnByte(page, column, low[glyph + j], lowMask);
+                    if (high != null) {
+                        writeColumnByte(page + 1, column, high[glyph + j], highMask);
                     }
                 }
 
@@ -263,6 +481,123 @@ public class SSD1306 implements Closeable {
         }
     }
 
+    /**
+     * Write 8 vertical pixels starting at (x, y), LSB at the top. Only the pixels set in
+     * mask are changed, a y that is not page aligned splits the column over two pages.
+     * @param x
+     * @param y
+     * @param bits pixel values, 1 for WHITE
+     * @param mask pixels to write
+     */
+    void blitColumn(int x, int y, int bits, int mask) {
+        if (x < 0 || x >= LCDWIDTH) {
+            return;
+        }
+
+        int page = y >> 3;
+        int shift = y & 7;
+
+        writeColumnByte(page, x, bits << shift, mask << shift);
+        if (shift != 0) {
+            writeColumnByte(page + 1, x, bits >> (8 - shift), mask >> (8 - shift));
+        }
+    }
+
+    /**
+     * Replace the pixels selected by mask in one buffer byte, marking it dirty if it changed
+     * @param page
+     * @param x
+     * @param bits pixel values, 1 for WHITE
+     * @param mask pixels to write
+     */
+    private void writeColumnByte(int page, int x, int bits, int mask) {
+        if (page < 0 || page >= LCDPAGES || (mask & 0xFF) == 0) {
+            return;
+        }
+
+        int index = DATA_OFFSET + x + page * LCDWIDTH;
+        int previous = mBuffer[index];
+        int value = (previous & ~mask) | (bits & mask);
+
+        if (((value ^ previous) & 0xFF) != 0) {
+            mBuffer[index] = (byte) value;
+            markDirty(page, x, x);
+        }
+    }
+
+    /**
+     * Set the panel contrast
+     * @param contrast 0 to 255
+     * @throws IOException
+     */
+    public void setContrast(int contrast) throws IOException {
+        synchronized (mBusLock) {
+            queueCommand(SETCONTRAST);
+            queueCommand(contrast);
+            flushCommands();
+        }
+    }
+
+    /**
+     * Invert the panel pixels without touching the buffer
+     * @param invert
+     * @throws IOException
+     */
+    public void setInverted(boolean invert) throws IOException {
+        synchronized (mBusLock) {
+            command((byte) (invert ? INVERTDISPLAY : NORMALDISPLAY));
+        }
+    }
+
+    /**
+     * Continuously scroll the given pages to the right
+     * @param startPage
+     * @param stopPage
+     * @throws IOException
+     */
+    public void scrollRight(int startPage, int stopPage) throws IOException {
+        scrollHorizontal(RIGHTHORIZONTALSCROLL, startPage, stopPage);
+    }
+
+    /**
+     * Continuously scroll the given pages to the left
+     * @param startPage
+     * @param stopPage
+     * @throws IOException
+     */
+    public void scrollLeft(int startPage, int stopPage) throws IOException {
+        scrollHorizontal(LEFT_HORIZONTALSCROLL, startPage, stopPage);
+    }
+
+    /**
+     * Stop scrolling, the panel RAM was shifted so the next {@link #show()} resends everything
+     * @throws IOException
+     */
+    public void scrollStop() throws IOException {
+        synchronized (mBusLock) {
+            command((byte) DEACTIVATESCROLL);
+        }
+        invalidate();
+    }
+
+    private void scrollHorizontal(int direction, int startPage, int stopPage) throws IOException {
+        if (stopPage < startPage) {
+            return;
+        }
+        synchronized (mBusLock) {
+            queueCommand(DEACTIVATESCROLL);
+            queueCommand(direction);
+            queueCommand(0x00);
+            queueCommand(startPage);
+            queueCommand(0x07);     // scroll step every 2 frames
+            queueCommand(stopPage);
+            queueCommand(0x00);
+            queueCommand(0xFF);
+            queueCommand(ACTIVATESCROLL);
+            flushCommands();
+        }
+    }
+
     /**
      * LCD Width
      * @return int
@@ -281,6 +616,16 @@ public class SSD1306 implements Closeable {
 
     @Override
     public void close() throws IOException {
+        mInitFuture.cancel(true);
+        if ( mRenderThread != null ) {
+            mRenderThread.interrupt();
+            try {
+                mRenderThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            mRenderThread = null;
+        }
         if ( spiDevice != null ) {
             try {
                 spiDevice.close();
@@ -312,27 +657,171 @@ public class SSD1306 implements Closeable {
      * @throws IOException
      */
     private void clearMemory() throws IOException {
+        Arrays.fill(mPageBuffer, (byte) 0);
         for (int i=0;i<8; i++) {
             setPageAddress(i);
             setColumnAddress(0);
 
-            for ( int j = 0 ; j < 48; j++ ) {
-                data((byte) 0);
-            }
+            flushCommands();
+            setDcMode(DC_DATA);
+            spiDevice.write(mPageBuffer, 48);
         }
     }
 
     /**
-     * Draw bitmap on OLED
+     * Draw bitmap on OLED, only the pages and columns changed since the last call are sent.
+     * Blocks the caller until the SPI transfer is done, see {@link #present()} for the
+     * non-blocking alternative. Do not mix both on the same instance.
      * @throws IOException
      */
     public void show() throws IOException {
-        for (int i=0;i<6; i++) {
+        synchronized (mBusLock) {
+            if (!mReady) {
+                // Keep the frame until initPanel() can send it
+                synchronized (mFrameLock) {
+                    snapshot();
+                }
+                mShowDeferred = true;
+                return;
+            }
+            flush(mBuffer, mDirtyStart, mDirtyEnd);
+        }
+    }
+
+    /**
+     * Hand the back buffer over to the render thread and return immediately. The render
+     * thread is started on first use. If the previous frame has not been sent yet it is
+     * replaced by this one, so a slow panel only ever shows the newest frame.
+     */
+    public void present() {
+        synchronized (mFrameLock) {
+            if (mFramePending) {
+                mFramesDropped++;
+            }
+            snapshot();
+            mFramePending = true;
+            mFramesPresented++;
+
+            if (mRenderThread == null) {
+                mRenderThread = new RenderThread();
+                mRenderThread.start();
+            }
+            mFrameLock.notify();
+        }
+    }
+
+    /**
+     * Copy the back buffer into the pending frame and merge its dirty ranges, the
+     * caller must hold mFrameLock
+     */
+    private void snapshot() {
+        System.arraycopy(mBuffer, 0, mPendingBuffer, 0, mBuffer.length);
+        for (int i = 0; i < LCDPAGES; i++) {
+            if (mDirtyStart[i] < mPendingDirtyStart[i]) {
+                mPendingDirtyStart[i] = mDirtyStart[i];
+            }
+            if (mDirtyEnd[i] > mPendingDirtyEnd[i]) {
+                mPendingDirtyEnd[i] = mDirtyEnd[i];
+            }
+        }
+        clearDirty(mDirtyStart, mDirtyEnd);
+    }
+
+    /**
+     * Send the dirty runs of a buffer to the panel and clear its dirty ranges, the caller
+     * must hold mBusLock
+     * @param buffer
+     * @param dirtyStart
+     * @param dirtyEnd
+     * @throws IOException
+     */
+    private void flush(byte[] buffer, int[] dirtyStart, int[] dirtyEnd) throws IOException {
+        for (int i=0;i<LCDPAGES; i++) {
+            int start = dirtyStart[i];
+            int end = dirtyEnd[i];
+
+            if (start > end) {
+                // Nothing changed on this page
+                mBytesSkipped += LCDWIDTH;
+                continue;
+            }
+
             setPageAddress(i);
-            setColumnAddress(0);
+            setColumnAddress(start);
+
+            // One transaction for the whole dirty run of the page
+            data(buffer, DATA_OFFSET + i*LCDWIDTH + start, end - start + 1);
 
-            for ( int j = 0 ; j < 0x40; j++ ) {
-                data(mBuffer[i*0x40+j]);
+            mBytesSent += end - start + 1;
+            mBytesSkipped += LCDWIDTH - (end - start + 1);
+            dirtyStart[i] = LCDWIDTH;
+            dirtyEnd[i] = -1;
+        }
+    }
+
+    /**
+     * Swap the newest presented frame to the front and flush it, one frame at a time
+     */
+    private class RenderThread extends Thread {
+        RenderThread() {
+            super(TAG + "-render");
+        }
+
+        @Override
+        public void run() {
+            // Frames presented before the panel is ready simply coalesce meanwhile
+            try {
+                mInitFuture.get();
+            } catch (InterruptedException e) {
+                return;
+            } catch (ExecutionException e) {
+                Log.e(TAG, "Panel init failed, not rendering", e.getCause());
+                return;
+            }
+
+            while (!isInterrupted()) {
+                synchronized (mFrameLock) {
+                    while (!mFramePending) {
+                        try {
+                            mFrameLock.wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+
+                    // The front dirty ranges are empty after the last flush, so they
+                    // become the empty ranges of the next pending frame
+                    byte[] buffer = mFrontBuffer;
+                    mFrontBuffer = mPendingBuffer;
+                    mPendingBuffer = buffer;
+                    int[] dirty = mFrontDirtyStart;
+                    mFrontDirtyStart = mPendingDirtyStart;
+                    mPendingDirtyStart = dirty;
+                    dirty = mFrontDirtyEnd;
+                    mFrontDirtyEnd = mPendingDirtyEnd;
+                    mPendingDirtyEnd = dirty;
+                    mFramePending = false;
+                }
+
+                synchronized (mBusLock) {
+                    try {
+                        flush(mFrontBuffer, mFrontDirtyStart, mFrontDirtyEnd);
+                    } catch (IOException e) {
+                        Log.e(TAG, "Unable to flush frame", e);
+                        // flush only clears the pages it sent, hand the rest to the next frame
+                        synchronized (mFrameLock) {
+                            for (int i = 0; i < LCDPAGES; i++) {
+                                if (mFrontDirtyStart[i] < mPendingDirtyStart[i]) {
+                                    mPendingDirtyStart[i] = mFrontDirtyStart[i];
+                                }
+                                if (mFrontDirtyEnd[i] > mPendingDirtyEnd[i]) {
+                                    mPendingDirtyEnd[i] = mFrontDirtyEnd[i];
+                                }
+                            }
+                        }
+                        clearDirty(mFrontDirtyStart, mFrontDirtyEnd);
+                    }
+                }
             }
         }
     }
@@ -344,7 +833,7 @@ public class SSD1306 implements Closeable {
      */
     private void setPageAddress(int i) throws IOException {
         i = 0xb0|i;
-        command((byte)i);
+        queueCommand(i);
     }
 
     /**
@@ -353,8 +842,8 @@ public class SSD1306 implements Closeable {
      * @throws IOException
      */
     private void setColumnAddress(int i) throws IOException {
-        command((byte) ((0x10|(i>>4))+0x02) );
-        command((byte) (0x0f&i) );
+        queueCommand((0x10|(i>>4))+0x02);
+        queueCommand(0x0f&i);
     }
 
     /**
@@ -363,20 +852,60 @@ public class SSD1306 implements Closeable {
      * @throws IOException
      */
     private void command(byte c) throws IOException {
-        DC_PIN.setActiveType(Gpio.ACTIVE_LOW);
-        DC_PIN.setValue(true);
-        spiDevice.write(new byte[]{c},1);
+        queueCommand(c);
+        flushCommands();
     }
 
     /**
-     * SSD1306 send data
+     * SSD1306 append a command byte to the pending batch
      * @param c
      * @throws IOException
      */
-    private void data(byte c) throws IOException {
-        DC_PIN.setActiveType(Gpio.ACTIVE_HIGH);
-        DC_PIN.setValue(true);
-        spiDevice.write(new byte[]{c},1);
+    private void queueCommand(int c) throws IOException {
+        if (mCommandLength == COMMAND_BUFFER_SIZE) {
+            flushCommands();
+        }
+        mCommandBuffer[mCommandLength++] = (byte) c;
+    }
+
+    /**
+     * SSD1306 send all pending command bytes in one SPI transaction
+     * @throws IOException
+     */
+    private void flushCommands() throws IOException {
+        if (mCommandLength == 0) {
+            return;
+        }
+        setDcMode(DC_COMMAND);
+        spiDevice.write(mCommandBuffer, mCommandLength);
+        mCommandLength = 0;
+    }
+
+    /**
+     * SSD1306 send a run of data bytes in a single SPI transaction
+     * @param buffer source buffer
+     * @param offset index of the first byte to send
+     * @param length number of bytes, at most one page
+     * @throws IOException
+     */
+    private void data(byte[] buffer, int offset, int length) throws IOException {
+        flushCommands();
+        setDcMode(DC_DATA);
+        System.arraycopy(buffer, offset, mPageBuffer, 0, length);
+        spiDevice.write(mPageBuffer, length);
+    }
+
+    /**
+     * Drive DC_PIN low for command or high for data, only when it changes
+     * @param mode DC_COMMAND | DC_DATA
+     * @throws IOException
+     */
+    private void setDcMode(int mode) throws IOException {
+        if (mDcMode == mode) {
+            return;
+        }
+        DC_PIN.setValue(mode == DC_DATA);
+        mDcMode = mode;
     }
 
     /**
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2017 Choong Hong Cheng, Lockswitch Sdn Bhd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.lockswitch.android.things.contrib.driver.sparkfun;
+
+/**
+ * Streaming filter over one channel of samples, run in place on whole blocks such as a
+ * drained FIFO batch. Filters keep their state between blocks, so a stream can be split
+ * anywhere.
+ */
+public interface SampleFilter {
+    /**
+     * Filter a block in place
+     * @param data
+     * @param offset first sample
+     * @param count samples in the block
+     * @return samples left at offset, fewer than count only for a decimating filter
+     */
+    int filter(float[] data, int offset, int count);
+
+    /**
+     * Forget the past samples, the next one starts the filter over
+     */
+    void reset();
+
+    /**
+     * @return a filter with the same settings and no state, e.g. for another axis
+     */
+    SampleFilter copy();
+}
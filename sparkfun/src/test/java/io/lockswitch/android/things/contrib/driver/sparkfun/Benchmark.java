@@ -0,0 +1,641 @@
+/*
+ * Copyright 2017 Choong Hong Cheng, Lockswitch Sdn Bhd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.lockswitch.android.things.contrib.driver.sparkfun;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Throughput measurements for the CPU bound paths of the driver, and bus traffic of the
+ * display and IMU paths against {@link FakeSSD1306} and {@link FakeLSM9DS0}. None of them
+ * touch a peripheral, so they run on a plain JVM with the unit test classpath, e.g. from
+ * the IDE, and print a line per measurement.
+ */
+public class Benchmark {
+    private static final int WARMUP_ITERATIONS = 200;
+
+    /**
+     * Begin a driver on the fake chip at the smallest full scales, clearing the bus
+     * statistics of the setup
+     * @param imu
+     * @param gRate
+     * @param aRate
+     * @return driver, the magnetometer at 100 Hz
+     */
+    static LSM9DS0 begin(FakeLSM9DS0 imu, LSM9DS0Constants.gyro_odr gRate,
+                         LSM9DS0Constants.accel_odr aRate) throws IOException {
+        LSM9DS0 lsm9DS0 = new LSM9DS0(imu.getGyroBus(), imu.getXmBus());
+        lsm9DS0.begin(LSM9DS0Constants.gyro_scale.G_SCALE_245DPS, LSM9DS0Constants.accel_scale.A_SCALE_2G,
+                LSM9DS0Constants.mag_scale.M_SCALE_2GS, gRate, aRate, LSM9DS0Constants.mag_odr.M_ODR_100);
+        imu.getGyroStatistics().reset();
+        imu.getXmStatistics().reset();
+        return lsm9DS0;
+    }
+
+    /**
+     * Convert a synthetic full screen photo-like image repeatedly with the given mode
+     * @param mode
+     * @param width
+     * @param height
+     * @param iterations
+     * @return converted pixels per second
+     */
+    public static double ditherThroughput(BitmapHelper.Mode mode, int width, int height, int iterations) {
+        int[] pixels = testImage(width, height);
+        byte[] buffer = new byte[width * ((height + 7) / 8)];
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            BitmapHelper.convert(pixels, width, height, mode, buffer, 0);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            BitmapHelper.convert(pixels, width, height, mode, buffer, 0);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        return (double) width * height * iterations * 1e9 / elapsed;
+    }
+
+    /**
+     * Diagonal gradient with noise, so both the thresholds and the dithering have work to do
+     */
+    private static int[] testImage(int width, int height) {
+        int[] pixels = new int[width * height];
+        Random random = new Random(42);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int level = ((x + y) * 255) / (width + height - 2) + random.nextInt(33) - 16;
+                level = Math.max(0, Math.min(255, level));
+                pixels[y * width + x] = 0xFF000000 | (level << 16) | (level << 8) | level;
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * Show a frame on a {@link FakeSSD1306} repeatedly
+     * @param fullFrame true to redraw the whole screen each time, false for a single glyph
+     * @param iterations
+     * @return bus statistics of the shows, excluding the panel init
+     */
+    public static BusStatistics flushStatistics(boolean fullFrame, int iterations)
+            throws IOException, InterruptedException {
+        FakeSSD1306 panel = new FakeSSD1306();
+        SSD1306 ssd1306 = new SSD1306(panel, panel.getDcPin(), panel.getResetPin(), false);
+        ssd1306.show();
+        panel.getStatistics().reset();
+
+        for (int i = 0; i < iterations; i++) {
+            if (fullFrame) {
+                ssd1306.invalidate();
+            } else {
+                ssd1306.drawString(0, 0, (i & 1) == 0 ? "0" : "1", Fonts.Type.font5x5);
+            }
+            ssd1306.show();
+        }
+        return panel.getStatistics();
+    }
+
+    /**
+     * Read every sensor of a {@link FakeLSM9DS0} repeatedly
+     * @param burst true to use {@link LSM9DS0#readSample}, false for one read per sensor
+     * @param iterations
+     * @return combined bus statistics of both devices for the reads
+     */
+    public static BusStatistics sampleStatistics(boolean burst, int iterations) throws IOException {
+        FakeLSM9DS0 imu = new FakeLSM9DS0();
+        LSM9DS0 lsm9DS0 = begin(imu, LSM9DS0Constants.gyro_odr.G_ODR_95_BW_25,
+                LSM9DS0Constants.accel_odr.A_ODR_100);
+
+        LSM9DS0Sample sample = new LSM9DS0Sample();
+        for (int i = 0; i < iterations; i++) {
+            if (burst) {
+                lsm9DS0.readSample(sample);
+            } else {
+                lsm9DS0.readGyro();
+                lsm9DS0.readAccel();
+                lsm9DS0.readMag();
+                lsm9DS0.readTemp();
+            }
+        }
+
+        BusStatistics total = new BusStatistics();
+        total.add(imu.getGyroStatistics());
+        total.add(imu.getXmStatistics());
+        return total;
+    }
+
+    /**
+     * Switch the output data rates and scales of a {@link FakeLSM9DS0} back and forth
+     * @param verify true to read every register back before updating it
+     * @param iterations
+     * @return combined bus statistics of both devices for the updates
+     */
+    public static BusStatistics reconfigureStatistics(boolean verify, int iterations) throws IOException {
+        FakeLSM9DS0 imu = new FakeLSM9DS0();
+        LSM9DS0 lsm9DS0 = begin(imu, LSM9DS0Constants.gyro_odr.G_ODR_95_BW_25,
+                LSM9DS0Constants.accel_odr.A_ODR_100);
+        lsm9DS0.setVerifyRegisters(verify);
+
+        for (int i = 0; i < iterations; i++) {
+            boolean fast = (i & 1) == 0;
+            lsm9DS0.setGyroODR(fast ? LSM9DS0Constants.gyro_odr.G_ODR_760_BW_100
+                    : LSM9DS0Constants.gyro_odr.G_ODR_95_BW_25);
+            lsm9DS0.setGyroScale(fast ? LSM9DS0Constants.gyro_scale.G_SCALE_2000DPS
+                    : LSM9DS0Constants.gyro_scale.G_SCALE_245DPS);
+            lsm9DS0.setAccelODR(fast ? LSM9DS0Constants.accel_odr.A_ODR_800
+                    : LSM9DS0Constants.accel_odr.A_ODR_100);
+            lsm9DS0.setAccelScale(fast ? LSM9DS0Constants.accel_scale.A_SCALE_8G
+                    : LSM9DS0Constants.accel_scale.A_SCALE_2G);
+        }
+
+        BusStatistics total = new BusStatistics();
+        total.add(imu.getGyroStatistics());
+        total.add(imu.getXmStatistics());
+        return total;
+    }
+
+    /**
+     * Drain gyroscope and accelerometer samples from the FIFOs of a {@link FakeLSM9DS0}
+     * @param samples queued per drain, up to {@link LSM9DS0FifoBatch#CAPACITY}
+     * @param iterations
+     * @return combined bus statistics of both devices for the drains
+     */
+    public static BusStatistics fifoStatistics(int samples, int iterations) throws IOException {
+        FakeLSM9DS0 imu = new FakeLSM9DS0();
+        LSM9DS0 lsm9DS0 = begin(imu, LSM9DS0Constants.gyro_odr.G_ODR_95_BW_25,
+                LSM9DS0Constants.accel_odr.A_ODR_100);
+        lsm9DS0.enableGyroFifo(LSM9DS0Constants.fifo_mode.FIFO_STREAM, 0);
+        lsm9DS0.enableAccelFifo(LSM9DS0Constants.fifo_mode.FIFO_STREAM, 0);
+        imu.getGyroStatistics().reset();
+        imu.getXmStatistics().reset();
+
+        LSM9DS0FifoBatch batch = new LSM9DS0FifoBatch();
+        for (int i = 0; i < iterations; i++) {
+            imu.fillFifo(samples);
+            lsm9DS0.readGyroFifo(batch);
+            lsm9DS0.readAccelFifo(batch);
+        }
+
+        BusStatistics total = new BusStatistics();
+        total.add(imu.getGyroStatistics());
+        total.add(imu.getXmStatistics());
+        return total;
+    }
+
+    /**
+     * Generate samples on a {@link FakeLSM9DS0} at a fixed period and deliver them through
+     * {@link LSM9DS0DataReady}. The fake calls the edge listeners directly, so the
+     * interrupt figure leaves out the GPIO dispatch of a real device.
+     * @param pollMicros interval of a polling thread, 0 to use the data-ready pins instead
+     * @param samples
+     * @param periodMicros time between two samples
+     * @param statistics receives the bus traffic of the deliveries
+     * @return mean time from a gyroscope sample to its delivery, in microseconds
+     */
+    public static double dataReadyLatency(final int pollMicros, int samples, int periodMicros,
+                                          BusStatistics statistics) throws IOException, InterruptedException {
+        final FakeLSM9DS0 imu = new FakeLSM9DS0();
+        imu.setStepOnRead(false);
+        LSM9DS0 lsm9DS0 = begin(imu, LSM9DS0Constants.gyro_odr.G_ODR_760_BW_100,
+                LSM9DS0Constants.accel_odr.A_ODR_800);
+
+        // Total latency and deliveries
+        final long[] latency = new long[2];
+        final LSM9DS0DataReady dataReady = new LSM9DS0DataReady(lsm9DS0, new LSM9DS0DataReady.Listener() {
+            @Override
+            public void onDataReady(int sensor, LSM9DS0Sample sample) {
+                // Skip the sample left over from before the first step
+                long step = imu.getLastStepNanos();
+                if (sensor == LSM9DS0DataReady.GYRO && step != 0) {
+                    latency[0] += sample.timestamp - step;
+                    latency[1]++;
+                }
+            }
+        });
+
+        Thread poller = null;
+        if (pollMicros > 0) {
+            poller = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        while (!isInterrupted()) {
+                            dataReady.poll();
+                            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(pollMicros));
+                        }
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            };
+            poller.start();
+        } else {
+            dataReady.attach(imu.getGyroDataReadyPin(), imu.getAccelDataReadyPin(), imu.getMagDataReadyPin());
+        }
+
+        long period = TimeUnit.MICROSECONDS.toNanos(periodMicros);
+        long next = System.nanoTime();
+        for (int i = 0; i < samples; i++) {
+            next += period;
+            LockSupport.parkNanos(next - System.nanoTime());
+            imu.step();
+        }
+        // Let the poller pick up the last sample
+        LockSupport.parkNanos(period);
+
+        if (poller != null) {
+            poller.interrupt();
+            poller.join();
+        }
+        dataReady.close();
+
+        statistics.add(imu.getGyroStatistics());
+        statistics.add(imu.getXmStatistics());
+        // The listener runs under the dataReady lock
+        synchronized (dataReady) {
+            return latency[1] == 0 ? 0 : latency[0] / 1000.0 / latency[1];
+        }
+    }
+
+    /**
+     * Run both orientation filters over recorded samples, without the bus in the way
+     * @param samples recorded from the fake chip and replayed in a loop
+     * @param iterations
+     * @return updates per second
+     */
+    public static double fusionThroughput(int samples, int iterations) throws IOException {
+        FakeLSM9DS0 imu = new FakeLSM9DS0();
+        // Without the resolutions every reading converts to 0 and the filters skip their
+        // correction steps
+        LSM9DS0 lsm9DS0 = begin(imu, LSM9DS0Constants.gyro_odr.G_ODR_760_BW_100,
+                LSM9DS0Constants.accel_odr.A_ODR_800);
+        LSM9DS0Sample[] recorded = new LSM9DS0Sample[samples];
+        for (int i = 0; i < samples; i++) {
+            recorded[i] = new LSM9DS0Sample();
+            lsm9DS0.readSample(recorded[i]);
+        }
+        LSM9DS0Fusion fusion = new LSM9DS0Fusion();
+        float[] values = new float[4];
+        long period = (long) (1e9 / LSM9DS0.gyroRateHz(lsm9DS0.getGyroODR()));
+        long nanos = 0;
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            fusion.update(lsm9DS0, recorded[i % samples], nanos += period);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            fusion.update(lsm9DS0, recorded[i % samples], nanos += period);
+            fusion.getRotationVector(values);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        return iterations * 1e9 / elapsed;
+    }
+
+    /**
+     * Time {@link LSM9DS0#readSample} against the fake chip, with or without a calibration
+     * that touches every coefficient
+     * @param calibrated
+     * @param iterations
+     * @return nanoseconds per sample
+     */
+    public static double calibratedReadNanos(boolean calibrated, int iterations) throws IOException {
+        FakeLSM9DS0 imu = new FakeLSM9DS0();
+        LSM9DS0 lsm9DS0 = begin(imu, LSM9DS0Constants.gyro_odr.G_ODR_95_BW_25,
+                LSM9DS0Constants.accel_odr.A_ODR_100);
+        if (calibrated) {
+            LSM9DS0Calibration calibration = new LSM9DS0Calibration();
+            for (int i = 0; i < 3; i++) {
+                calibration.gyroBias[i] = 0.5f;
+                calibration.accelOffset[i] = 0.02f;
+                calibration.accelScale[i] = 0.98f;
+                calibration.magOffset[i] = 0.1f;
+            }
+            for (int i = 0; i < 9; i++) {
+                calibration.magSoftIron[i] = i % 4 == 0 ? 1.05f : 0.01f;
+            }
+            lsm9DS0.setCalibration(calibration);
+        }
+        LSM9DS0Sample sample = new LSM9DS0Sample();
+
+        for (int i = 0; i < WARMUP_ITERATIONS * 10; i++) {
+            lsm9DS0.readSample(sample);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            lsm9DS0.readSample(sample);
+        }
+        return (System.nanoTime() - start) / (double) iterations;
+    }
+
+    /**
+     * Put samples into a {@link LSM9DS0SampleRing} as fast as possible while consumer
+     * threads poll it, checking that no consumer ever sees a torn sample
+     * @param consumers
+     * @param samples
+     * @param missed receives the samples each consumer missed
+     * @return samples put per second
+     */
+    public static double ringThroughput(int consumers, int samples, final long[] missed)
+            throws InterruptedException {
+        final LSM9DS0SampleRing ring = new LSM9DS0SampleRing(256);
+        final long last = samples - 1;
+        Thread[] threads = new Thread[consumers];
+        for (int c = 0; c < consumers; c++) {
+            final int consumer = c;
+            final LSM9DS0SampleRing.Reader reader = ring.newReader();
+            threads[c] = new Thread() {
+                @Override
+                public void run() {
+                    LSM9DS0Sample sample = new LSM9DS0Sample();
+                    while (reader.getSequence() < last) {
+                        if (!reader.poll(sample)) {
+                            Thread.yield();
+                            continue;
+                        }
+                        // Every field of sample n holds n
+                        int n = (int) reader.getSequence();
+                        if (sample.gx != n || sample.ay != n || sample.mz != n || sample.temperature != n
+                                || sample.timestamp != n) {
+                            throw new IllegalStateException("Torn sample " + n);
+                        }
+                    }
+                    missed[consumer] = reader.getMissed();
+                }
+            };
+            threads[c].start();
+        }
+
+        LSM9DS0Sample sample = new LSM9DS0Sample();
+        long start = System.nanoTime();
+        for (int i = 0; i < samples; i++) {
+            sample.gx = sample.gy = sample.gz = i;
+            sample.ax = sample.ay = sample.az = i;
+            sample.mx = sample.my = sample.mz = i;
+            sample.temperature = i;
+            sample.timestamp = i;
+            ring.put(sample);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return samples * 1e9 / elapsed;
+    }
+
+    /**
+     * Run a {@link LSM9DS0Acquisition} against the fake chip, optionally with threads
+     * spinning next to it
+     * @param periodMicros
+     * @param millis how long to run
+     * @param loadThreads busy threads competing for the CPU
+     * @return the acquisition, stopped, with its statistics
+     */
+    public static LSM9DS0Acquisition acquisitionJitter(int periodMicros, int millis, int loadThreads)
+            throws IOException, InterruptedException {
+        FakeLSM9DS0 imu = new FakeLSM9DS0();
+        LSM9DS0 lsm9DS0 = begin(imu, LSM9DS0Constants.gyro_odr.G_ODR_380_BW_100,
+                LSM9DS0Constants.accel_odr.A_ODR_400);
+
+        Thread[] load = new Thread[loadThreads];
+        for (int i = 0; i < loadThreads; i++) {
+            load[i] = new Thread() {
+                @Override
+                public void run() {
+                    double x = 0;
+                    while (!isInterrupted()) {
+                        x += Math.sqrt(x + 1);
+                    }
+                }
+            };
+            load[i].start();
+        }
+
+        LSM9DS0Acquisition acquisition = new LSM9DS0Acquisition(lsm9DS0, new LSM9DS0SampleRing(1024));
+        acquisition.start(periodMicros);
+        Thread.sleep(millis);
+        acquisition.stop();
+
+        for (Thread thread : load) {
+            thread.interrupt();
+            thread.join();
+        }
+        return acquisition;
+    }
+
+    /**
+     * Record samples from the fake chip with a {@link LSM9DS0Recorder}, then replay them
+     * as fast as possible through the orientation filters
+     * @param directory scratch directory, the recording is deleted afterwards
+     * @param samples
+     * @param samplesPerFile
+     * @return nanoseconds per appended sample, and replayed samples per second
+     */
+    public static double[] recordReplay(File directory, int samples, int samplesPerFile) throws IOException {
+        FakeLSM9DS0 imu = new FakeLSM9DS0();
+        final LSM9DS0 lsm9DS0 = begin(imu, LSM9DS0Constants.gyro_odr.G_ODR_760_BW_100,
+                LSM9DS0Constants.accel_odr.A_ODR_800);
+        String prefix = "benchmark";
+        LSM9DS0Sample sample = new LSM9DS0Sample();
+        long appendNanos = 0;
+        try (LSM9DS0Recorder recorder = new LSM9DS0Recorder(directory, prefix, samplesPerFile, 0, lsm9DS0)) {
+            for (int i = 0; i < samples; i++) {
+                lsm9DS0.readSample(sample);
+                long start = System.nanoTime();
+                recorder.onSample(sample, i);
+                appendNanos += System.nanoTime() - start;
+            }
+        }
+
+        File[] files = LSM9DS0Recorder.listFiles(directory, prefix);
+        final LSM9DS0Fusion fusion = new LSM9DS0Fusion();
+        LSM9DS0Replay replay = new LSM9DS0Replay(files, new LSM9DS0SampleRing(1024));
+        // Convert with the scales recorded with
+        lsm9DS0.setGyroScale(replay.getGyroScale());
+        lsm9DS0.setAccelScale(replay.getAccelScale());
+        lsm9DS0.setMagScale(replay.getMagScale());
+        replay.setListener(new LSM9DS0Acquisition.Listener() {
+            @Override
+            public void onSample(LSM9DS0Sample sample, long sequence) {
+                fusion.update(lsm9DS0, sample, sample.timestamp);
+            }
+        });
+        long start = System.nanoTime();
+        long played = replay.replay(0);
+        long elapsed = System.nanoTime() - start;
+
+        for (File file : files) {
+            file.delete();
+        }
+        return new double[] { appendNanos / (double) samples, played * 1e9 / elapsed };
+    }
+
+    /**
+     * Run full gyroscope FIFO batches through a median, low pass, FIR, moving average and
+     * decimation pipeline
+     * @param batches
+     * @return input samples, all three axes, per second
+     */
+    public static double filterThroughput(int batches) throws IOException {
+        FakeLSM9DS0 imu = new FakeLSM9DS0();
+        LSM9DS0 lsm9DS0 = begin(imu, LSM9DS0Constants.gyro_odr.G_ODR_760_BW_100,
+                LSM9DS0Constants.accel_odr.A_ODR_800);
+        lsm9DS0.enableGyroFifo(LSM9DS0Constants.fifo_mode.FIFO_STREAM, 0);
+        imu.setStepOnRead(false);
+        imu.fillFifo(LSM9DS0FifoBatch.CAPACITY);
+        LSM9DS0FifoBatch recorded = new LSM9DS0FifoBatch();
+        lsm9DS0.readGyroFifo(recorded);
+
+        LSM9DS0FilterPipeline pipeline = new LSM9DS0FilterPipeline()
+                .add(new MedianFilter(5))
+                .add(BiquadFilter.lowPass(760, 50, BiquadFilter.BUTTERWORTH_Q))
+                .add(FirFilter.lowPass(760, 40, 15))
+                .add(new ExponentialMovingAverage(0.5f))
+                .add(new Decimator(4));
+        LSM9DS0FifoBatch batch = new LSM9DS0FifoBatch();
+
+        for (int i = 0; i < WARMUP_ITERATIONS * 10; i++) {
+            copyBatch(recorded, batch);
+            pipeline.filter(batch);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < batches; i++) {
+            copyBatch(recorded, batch);
+            pipeline.filter(batch);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        return (double) batches * recorded.count * 1e9 / elapsed;
+    }
+
+    private static void copyBatch(LSM9DS0FifoBatch from, LSM9DS0FifoBatch to) {
+        System.arraycopy(from.x, 0, to.x, 0, from.count);
+        System.arraycopy(from.y, 0, to.y, 0, from.count);
+        System.arraycopy(from.z, 0, to.z, 0, from.count);
+        System.arraycopy(from.timestamp, 0, to.timestamp, 0, from.count);
+        to.count = from.count;
+        to.overrun = from.overrun;
+    }
+
+    /**
+     * Deliver clicks from the fake chip through {@link LSM9DS0MotionEvents} on INT2_XM.
+     * Nothing touches the bus between events, where software detection polls the
+     * accelerometer at its full output data rate.
+     * @param events
+     * @return bus traffic of the deliveries
+     */
+    public static BusStatistics motionEventStatistics(int events) throws IOException {
+        FakeLSM9DS0 imu = new FakeLSM9DS0();
+        imu.setStepOnRead(false);
+        LSM9DS0 lsm9DS0 = begin(imu, LSM9DS0Constants.gyro_odr.G_ODR_95_BW_25,
+                LSM9DS0Constants.accel_odr.A_ODR_100);
+        lsm9DS0.enableClick(true, true, 0.5f, 20, 100, 300);
+        lsm9DS0.routeMotionEvents(true);
+        final int[] delivered = new int[1];
+        LSM9DS0MotionEvents motionEvents = new LSM9DS0MotionEvents(lsm9DS0, new LSM9DS0MotionEvents.Listener() {
+            @Override
+            public void onMotionEvent(int event, int axes) {
+                delivered[0]++;
+            }
+        });
+        motionEvents.attach(imu.getMagDataReadyPin());
+        imu.getXmStatistics().reset();
+
+        for (int i = 0; i < events; i++) {
+            // Single click on z
+            imu.injectMotion(0, 0, 0x54);
+        }
+        motionEvents.close();
+        if (delivered[0] != events) {
+            throw new IllegalStateException("Delivered " + delivered[0] + " of " + events + " clicks");
+        }
+        return imu.getXmStatistics();
+    }
+
+    private static void printBus(String name, BusStatistics statistics, int iterations) {
+        System.out.println(String.format("%-24s %6.1f transactions %7.1f bytes %8.1f us on the wire",
+                name, (double) statistics.getTransactions() / iterations,
+                (double) (statistics.getBytesRead() + statistics.getBytesWritten()) / iterations,
+                statistics.getNanos() / 1000.0 / iterations));
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        printBus("show full frame", flushStatistics(true, 1000), 1000);
+        printBus("show one glyph", flushStatistics(false, 1000), 1000);
+        printBus("read each sensor", sampleStatistics(false, 1000), 1000);
+        printBus("read sample burst", sampleStatistics(true, 1000), 1000);
+        printBus("reconfigure", reconfigureStatistics(false, 1000), 1000);
+        printBus("reconfigure, verified", reconfigureStatistics(true, 1000), 1000);
+        printBus("drain FIFO, per sample", fifoStatistics(LSM9DS0FifoBatch.CAPACITY, 1000),
+                1000 * LSM9DS0FifoBatch.CAPACITY);
+        for (int pollMicros : new int[] { 0, 100, 1000 }) {
+            BusStatistics statistics = new BusStatistics();
+            double latency = dataReadyLatency(pollMicros, 500, 2000, statistics);
+            String name = pollMicros == 0 ? "data-ready interrupt" : "data-ready poll " + pollMicros + "us";
+            System.out.println(String.format("%-24s %8.1f us latency", name, latency));
+            printBus(name, statistics, 500);
+        }
+        for (int consumers : new int[] { 1, 3 }) {
+            long[] missed = new long[consumers];
+            double rate = ringThroughput(consumers, 2000000, missed);
+            long total = 0;
+            for (long m : missed) {
+                total += m;
+            }
+            System.out.println(String.format("%-24s %8.1f Msamples/s put, %5.1f%% missed per consumer",
+                    "sample ring, " + consumers + " reader" + (consumers > 1 ? "s" : ""), rate / 1e6,
+                    100.0 * total / consumers / 2000000));
+        }
+        for (int loadThreads : new int[] { 0, 4 }) {
+            LSM9DS0Acquisition acquisition = acquisitionJitter(2500, 2000, loadThreads);
+            String name = "acquire 400Hz, " + loadThreads + " busy";
+            System.out.println(String.format("%-24s %8.1f Hz, %d skipped, %s", name,
+                    acquisition.getActualRateHz(), acquisition.getSkippedCount(), acquisition.getJitter()));
+        }
+        double[] recording = recordReplay(new File(System.getProperty("java.io.tmpdir")), 200000, 50000);
+        System.out.println(String.format("%-24s %8.1f ns per sample appended, %.0f samples/s replayed with fusion",
+                "record and replay", recording[0], recording[1]));
+        System.out.println(String.format("%-24s %8.2f Msamples/s", "filter pipeline, 3 axes",
+                filterThroughput(200000) / 1e6));
+        // Both paths share readSample, so compile it with both seen before timing either
+        calibratedReadNanos(false, 200000);
+        calibratedReadNanos(true, 200000);
+        for (boolean calibrated : new boolean[] { false, true }) {
+            System.out.println(String.format("%-24s %8.1f ns per sample",
+                    calibrated ? "read sample, calibrated" : "read sample, raw",
+                    calibratedReadNanos(calibrated, 200000)));
+        }
+        System.out.println(String.format("%-24s %8.0f updates/s", "9+6 axis fusion",
+                fusionThroughput(10000, 1000000)));
+        printBus("motion event", motionEventStatistics(1000), 1000);
+
+        for (BitmapHelper.Mode mode : BitmapHelper.Mode.values()) {
+            double pixels = ditherThroughput(mode, 64, 48, 20000);
+            System.out.println(String.format("dither %-16s %8.1f Mpixel/s %10.0f frames/s at 64x48",
+                    mode, pixels / 1e6, pixels / (64 * 48)));
+        }
+    }
+}
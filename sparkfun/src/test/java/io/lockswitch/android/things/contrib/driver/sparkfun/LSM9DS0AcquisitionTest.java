@@ -0,0 +1,110 @@
+/*
+ * Copyright 2017 Choong Hong Cheng, Lockswitch Sdn Bhd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.lockswitch.android.things.contrib.driver.sparkfun;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Sampling against the fake chip at a short period, with listeners that misbehave
+ */
+public class LSM9DS0AcquisitionTest {
+    private static final int PERIOD_MICROS = 5000;
+    private static final long PERIOD_NANOS = TimeUnit.MICROSECONDS.toNanos(PERIOD_MICROS);
+
+    private LSM9DS0Acquisition acquisition;
+
+    @Before
+    public void setUp() throws IOException {
+        LSM9DS0 lsm9DS0 = Benchmark.begin(new FakeLSM9DS0(), LSM9DS0Constants.gyro_odr.G_ODR_190_BW_50,
+                LSM9DS0Constants.accel_odr.A_ODR_200);
+        acquisition = new LSM9DS0Acquisition(lsm9DS0, new LSM9DS0SampleRing(256));
+    }
+
+    @After
+    public void tearDown() {
+        acquisition.stop();
+    }
+
+    @Test(timeout = 10000)
+    public void stallResumesOnAFutureDeadline() throws InterruptedException {
+        final int stallSample = 10;
+        final int stallPeriods = 10;
+        final int samples = 40;
+        // Time each listener call started, and when the stall ended
+        final long[] calls = new long[samples];
+        final long[] stallEnd = new long[1];
+        acquisition.setListener(new LSM9DS0Acquisition.Listener() {
+            @Override
+            public void onSample(LSM9DS0Sample sample, long sequence) {
+                if (sequence < samples) {
+                    calls[(int) sequence] = System.nanoTime();
+                }
+                if (sequence == stallSample) {
+                    try {
+                        Thread.sleep(TimeUnit.NANOSECONDS.toMillis(PERIOD_NANOS * stallPeriods));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    stallEnd[0] = System.nanoTime();
+                }
+            }
+        });
+        acquisition.start(PERIOD_MICROS);
+        while (acquisition.getSampleCount() < samples) {
+            Thread.sleep(10);
+        }
+        acquisition.stop();
+
+        // Catching up would read the missed deadlines back to back, right after the stall
+        int burst = 0;
+        for (int i = stallSample + 1; i < samples; i++) {
+            if (calls[i] - stallEnd[0] < PERIOD_NANOS) {
+                burst++;
+            }
+        }
+        assertTrue("Read " + burst + " samples within a period of the stall", burst <= 1);
+        assertTrue("Skipped " + acquisition.getSkippedCount(),
+                acquisition.getSkippedCount() >= stallPeriods - 1);
+    }
+
+    @Test(timeout = 10000)
+    public void throwingListenerKeepsSampling() throws InterruptedException {
+        acquisition.setListener(new LSM9DS0Acquisition.Listener() {
+            @Override
+            public void onSample(LSM9DS0Sample sample, long sequence) {
+                throw new IllegalStateException("Listener bug " + sequence);
+            }
+        });
+        acquisition.start(PERIOD_MICROS);
+        while (acquisition.getSampleCount() < 20) {
+            Thread.sleep(10);
+        }
+        assertTrue(acquisition.isRunning());
+        acquisition.stop();
+
+        assertEquals(acquisition.getSampleCount(), acquisition.getListenerErrorCount());
+        assertEquals(0, acquisition.getErrorCount());
+    }
+}
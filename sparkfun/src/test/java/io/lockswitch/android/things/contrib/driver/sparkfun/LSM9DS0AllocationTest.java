@@ -0,0 +1,124 @@
+/*
+ * Copyright 2017 Choong Hong Cheng, Lockswitch Sdn Bhd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.lockswitch.android.things.contrib.driver.sparkfun;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * The read paths meant for a sampling loop must not allocate once warmed up, so they never
+ * wake the garbage collector. Counted with the HotSpot per thread allocation counter.
+ */
+public class LSM9DS0AllocationTest {
+    private static final int WARMUP_ITERATIONS = 20000;
+    private static final int ITERATIONS = 100000;
+
+    private interface Read {
+        void read() throws IOException;
+    }
+
+    private com.sun.management.ThreadMXBean threads;
+    private LSM9DS0 lsm9DS0;
+    private final LSM9DS0Sample sample = new LSM9DS0Sample();
+
+    @Before
+    public void setUp() throws IOException {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        lsm9DS0 = Benchmark.begin(new FakeLSM9DS0(), LSM9DS0Constants.gyro_odr.G_ODR_95_BW_25,
+                LSM9DS0Constants.accel_odr.A_ODR_100);
+    }
+
+    private long allocatedBytes(Read read) throws IOException {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            read.read();
+        }
+        long id = Thread.currentThread().getId();
+        long start = threads.getThreadAllocatedBytes(id);
+        for (int i = 0; i < ITERATIONS; i++) {
+            read.read();
+        }
+        return threads.getThreadAllocatedBytes(id) - start;
+    }
+
+    @Test
+    public void readSampleDoesNotAllocate() throws IOException {
+        assertEquals(0, allocatedBytes(new Read() {
+            @Override
+            public void read() throws IOException {
+                lsm9DS0.readSample(sample);
+            }
+        }));
+    }
+
+    @Test
+    public void readSampleSplitBurstDoesNotAllocate() throws IOException {
+        lsm9DS0.setSplitXmBurst(true);
+        readSampleDoesNotAllocate();
+    }
+
+    @Test
+    public void readGyroDoesNotAllocate() throws IOException {
+        assertEquals(0, allocatedBytes(new Read() {
+            @Override
+            public void read() throws IOException {
+                lsm9DS0.readGyro(sample);
+            }
+        }));
+    }
+
+    @Test
+    public void readAccelDoesNotAllocate() throws IOException {
+        assertEquals(0, allocatedBytes(new Read() {
+            @Override
+            public void read() throws IOException {
+                lsm9DS0.readAccel(sample);
+            }
+        }));
+    }
+
+    @Test
+    public void readMagDoesNotAllocate() throws IOException {
+        assertEquals(0, allocatedBytes(new Read() {
+            @Override
+            public void read() throws IOException {
+                lsm9DS0.readMag(sample);
+            }
+        }));
+    }
+
+    @Test
+    public void readTempDoesNotAllocate() throws IOException {
+        assertEquals(0, allocatedBytes(new Read() {
+            @Override
+            public void read() throws IOException {
+                lsm9DS0.readTemp(sample);
+            }
+        }));
+    }
+}
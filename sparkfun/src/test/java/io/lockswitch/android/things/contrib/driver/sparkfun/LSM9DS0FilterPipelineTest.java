@@ -0,0 +1,95 @@
+/*
+ * Copyright 2017 Choong Hong Cheng, Lockswitch Sdn Bhd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.lockswitch.android.things.contrib.driver.sparkfun;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * All three axes and the timestamps of a pipeline stay in step whatever the block sizes
+ */
+public class LSM9DS0FilterPipelineTest {
+    private static LSM9DS0FilterPipeline pipeline() {
+        return new LSM9DS0FilterPipeline()
+                .add(new MedianFilter(5))
+                .add(BiquadFilter.lowPass(760, 50, BiquadFilter.BUTTERWORTH_Q))
+                .add(new Decimator(2))
+                .add(FirFilter.lowPass(380, 40, 15))
+                .add(new Decimator(3));
+    }
+
+    /**
+     * Feed 600 samples in blocks of the given sizes, cycled
+     * @return x, y, z and timestamps of the output, one row each
+     */
+    private static double[][] run(LSM9DS0FilterPipeline pipeline, int[] blocks) {
+        int total = 600;
+        double[][] output = new double[4][total];
+        float[] x = new float[total];
+        float[] y = new float[total];
+        float[] z = new float[total];
+        long[] timestamps = new long[total];
+        int in = 0;
+        int out = 0;
+        for (int b = 0; in < total; b++) {
+            int count = Math.min(blocks[b % blocks.length], total - in);
+            for (int i = 0; i < count; i++) {
+                int n = in + i;
+                x[i] = (float) Math.sin(n * 0.01) * 1000.0f;
+                y[i] = n;
+                z[i] = -n;
+                timestamps[i] = n * 1000L;
+            }
+            int left = pipeline.filter(x, y, z, timestamps, count);
+            for (int i = 0; i < left; i++) {
+                output[0][out] = x[i];
+                output[1][out] = y[i];
+                output[2][out] = z[i];
+                output[3][out] = timestamps[i];
+                out++;
+            }
+            in += count;
+        }
+        assertEquals(100, out);
+        return output;
+    }
+
+    @Test
+    public void blockSplitInvariant() {
+        double[][] whole = run(pipeline(), new int[] { 600 });
+        double[][] split = run(pipeline(), new int[] { 1, 7, 32, 5, 2, 13 });
+        for (int row = 0; row < whole.length; row++) {
+            assertArrayEquals(whole[row], split[row], 0.0);
+        }
+    }
+
+    @Test
+    public void timestampsFollowDecimation() {
+        LSM9DS0FilterPipeline pipeline = new LSM9DS0FilterPipeline()
+                .add(new ExponentialMovingAverage(1.0f))
+                .add(new Decimator(2))
+                .add(new Decimator(3));
+        double[][] output = run(pipeline, new int[] { 7, 1, 32, 4 });
+        for (int i = 0; i < 100; i++) {
+            // y is the input index, unchanged by a moving average with alpha 1
+            assertEquals(i * 6, output[1][i], 0.0);
+            assertEquals(output[1][i] * 1000.0, output[3][i], 0.0);
+        }
+    }
+}
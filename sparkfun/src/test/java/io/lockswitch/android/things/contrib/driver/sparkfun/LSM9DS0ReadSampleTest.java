@@ -0,0 +1,57 @@
+/*
+ * Copyright 2017 Choong Hong Cheng, Lockswitch Sdn Bhd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.lockswitch.android.things.contrib.driver.sparkfun;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The split XM burst must read the same sample as the single one, with fewer bytes
+ */
+public class LSM9DS0ReadSampleTest {
+    @Test
+    public void splitBurstReadsTheSameSample() throws IOException {
+        FakeLSM9DS0 imu = new FakeLSM9DS0();
+        imu.setStepOnRead(false);
+        LSM9DS0 lsm9DS0 = Benchmark.begin(imu, LSM9DS0Constants.gyro_odr.G_ODR_95_BW_25,
+                LSM9DS0Constants.accel_odr.A_ODR_100);
+        imu.step();
+
+        LSM9DS0Sample single = new LSM9DS0Sample();
+        lsm9DS0.readSample(single);
+        long singleBytes = imu.getXmStatistics().getBytesRead();
+        imu.getXmStatistics().reset();
+
+        lsm9DS0.setSplitXmBurst(true);
+        LSM9DS0Sample split = new LSM9DS0Sample();
+        lsm9DS0.readSample(split);
+
+        assertEquals(single.ax, split.ax);
+        assertEquals(single.ay, split.ay);
+        assertEquals(single.az, split.az);
+        assertEquals(single.mx, split.mx);
+        assertEquals(single.my, split.my);
+        assertEquals(single.mz, split.mz);
+        assertEquals(single.temperature, split.temperature);
+        assertEquals(41, singleBytes);
+        assertEquals(15, imu.getXmStatistics().getBytesRead());
+        assertEquals(2, imu.getXmStatistics().getTransactions());
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2017 Choong Hong Cheng, Lockswitch Sdn Bhd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.lockswitch.android.things.contrib.driver.sparkfun;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Streams must filter the same however they are cut into blocks, and the filters must
+ * start without a transient
+ */
+public class SampleFilterTest {
+    // Block sizes the stream is cut into, cycled
+    private static final int[] BLOCKS = { 1, 7, 2, 32, 3, 5, 13 };
+
+    private static float[] noise(int count) {
+        float[] data = new float[count];
+        Random random = new Random(42);
+        for (int i = 0; i < count; i++) {
+            data[i] = (float) (Math.sin(i * 0.05) * 1000.0 + random.nextGaussian() * 50.0);
+        }
+        return data;
+    }
+
+    /**
+     * Run the stream through in blocks of the given sizes, compacting decimated output
+     * @return output samples
+     */
+    private static float[] filterInBlocks(SampleFilter filter, float[] input, int[] blocks) {
+        float[] data = input.clone();
+        int out = 0;
+        int offset = 0;
+        for (int b = 0; offset < data.length; b++) {
+            int count = Math.min(blocks[b % blocks.length], data.length - offset);
+            int left = filter.filter(data, offset, count);
+            System.arraycopy(data, offset, data, out, left);
+            out += left;
+            offset += count;
+        }
+        return Arrays.copyOf(data, out);
+    }
+
+    private static void assertBlockSplitInvariant(SampleFilter filter) {
+        float[] input = noise(1000);
+        float[] whole = filterInBlocks(filter.copy(), input, new int[] { input.length });
+        float[] split = filterInBlocks(filter.copy(), input, BLOCKS);
+        assertArrayEquals(whole, split, 0.0f);
+
+        // And the same again after a reset
+        filterInBlocks(filter, input, BLOCKS);
+        filter.reset();
+        assertArrayEquals(whole, filterInBlocks(filter, input, BLOCKS), 0.0f);
+    }
+
+    @Test
+    public void medianIsBlockSplitInvariant() {
+        assertBlockSplitInvariant(new MedianFilter(5));
+    }
+
+    @Test
+    public void biquadIsBlockSplitInvariant() {
+        assertBlockSplitInvariant(BiquadFilter.lowPass(760, 50, BiquadFilter.BUTTERWORTH_Q));
+        assertBlockSplitInvariant(BiquadFilter.highPass(760, 5, BiquadFilter.BUTTERWORTH_Q));
+    }
+
+    @Test
+    public void firIsBlockSplitInvariant() {
+        assertBlockSplitInvariant(FirFilter.lowPass(760, 40, 15));
+    }
+
+    @Test
+    public void movingAverageIsBlockSplitInvariant() {
+        assertBlockSplitInvariant(new ExponentialMovingAverage(0.2f));
+    }
+
+    @Test
+    public void decimatorIsBlockSplitInvariant() {
+        assertBlockSplitInvariant(new Decimator(3));
+    }
+
+    @Test
+    public void decimatorKeepsTimestampsWithTheirValues() {
+        Decimator decimator = new Decimator(3);
+        float[] values = new float[100];
+        long[] timestamps = new long[100];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i;
+            timestamps[i] = i * 1000L;
+        }
+        // One instance for both, in uneven blocks, values and timestamps in turn
+        int offset = 0;
+        int out = 0;
+        for (int b = 0; offset < values.length; b++) {
+            int count = Math.min(BLOCKS[b % BLOCKS.length], values.length - offset);
+            int left = decimator.filter(values, offset, count);
+            assertEquals(left, decimator.filter(timestamps, offset, count));
+            for (int i = 0; i < left; i++) {
+                assertEquals(timestamps[offset + i], (long) values[offset + i] * 1000L);
+                assertEquals(out * 3, (int) values[offset + i]);
+                out++;
+            }
+            offset += count;
+        }
+        assertEquals(34, out);
+    }
+
+    @Test
+    public void medianDropsNaN() {
+        float[] data = { 1, 2, Float.NaN, 3, 4, 5 };
+        new MedianFilter(3).filter(data, 0, data.length);
+        // Windows {1 1 1} {1 1 2} {1 2 NaN} {2 NaN 3} {NaN 3 4} {3 4 5}, NaN sorting highest
+        assertArrayEquals(new float[] { 1, 1, 2, 3, 4, 4 }, data, 0.0f);
+    }
+
+    @Test
+    public void medianRecoversAfterNaNs() {
+        MedianFilter median = new MedianFilter(5);
+        float[] data = noise(200);
+        for (int i = 20; i < data.length; i += 17) {
+            data[i] = Float.NaN;
+            data[i + 2] = Float.NaN;
+        }
+        median.filter(data, 0, data.length);
+        for (float value : data) {
+            assertFalse(Float.isNaN(value));
+        }
+    }
+
+    /**
+     * @return output amplitude once settled, for a unit input alternating every sample
+     */
+    private static float nyquistGain(BiquadFilter filter) {
+        float[] data = new float[400];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (i & 1) == 0 ? 1.0f : -1.0f;
+        }
+        filter.filter(data, 0, data.length);
+        return Math.abs(data[data.length - 1]);
+    }
+
+    private static float[] constant(float value, int count) {
+        float[] data = new float[count];
+        Arrays.fill(data, value);
+        return data;
+    }
+
+    @Test
+    public void lowPassGains() {
+        float[] data = constant(100.0f, 50);
+        BiquadFilter.lowPass(760, 50, BiquadFilter.BUTTERWORTH_Q).filter(data, 0, data.length);
+        // Primed, so the very first output is already settled
+        for (float value : data) {
+            assertEquals(100.0f, value, 1e-3f);
+        }
+        assertEquals(0.0f, nyquistGain(BiquadFilter.lowPass(760, 50, BiquadFilter.BUTTERWORTH_Q)), 1e-4f);
+    }
+
+    @Test
+    public void highPassGains() {
+        float[] data = constant(100.0f, 50);
+        BiquadFilter.highPass(760, 5, BiquadFilter.BUTTERWORTH_Q).filter(data, 0, data.length);
+        for (float value : data) {
+            assertEquals(0.0f, value, 1e-3f);
+        }
+        assertEquals(1.0f, nyquistGain(BiquadFilter.highPass(760, 5, BiquadFilter.BUTTERWORTH_Q)), 1e-3f);
+    }
+
+    @Test
+    public void resetPrimesAgain() {
+        BiquadFilter filter = BiquadFilter.lowPass(760, 50, BiquadFilter.BUTTERWORTH_Q);
+        filter.filter(constant(-500.0f, 50), 0, 50);
+        filter.reset();
+        float[] data = constant(100.0f, 10);
+        filter.filter(data, 0, data.length);
+        for (float value : data) {
+            assertEquals(100.0f, value, 1e-3f);
+        }
+    }
+}